@@ -0,0 +1,108 @@
+package io.reactive.benchmarks;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.util.Actor;
+import io.reactive.server.util.MailboxType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * enqueue: producers only, the actor drains the mailbox on the executor meanwhile.
+ * roundTrip: a message is enqueued, scheduled on the executor and dispatched.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+@State(Scope.Benchmark)
+public class ActorBenchmark {
+    private static final Object MESSAGE = new Object();
+
+    @Param({"LINKED", "MPSC_ARRAY"})
+    public MailboxType mailboxType;
+
+    @Param({"65536"})
+    public int capacity;
+
+    // messages per run, 0 drains the mailbox
+    @Param({"0", "64"})
+    public int throughput;
+
+    private ExecutorService executor;
+    private CountingActor actor;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        actor = new CountingActor(executor, mailboxType, capacity, throughput);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean enqueue() {
+        return actor.tell(MESSAGE);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long roundTrip() {
+        long expected = actor.dispatched.get() + 1;
+        while (!actor.tell(MESSAGE)) {
+            Thread.onSpinWait();
+        }
+
+        long dispatched;
+        while ((dispatched = actor.dispatched.get()) < expected) {
+            Thread.onSpinWait();
+        }
+        return dispatched;
+    }
+
+    private static class CountingActor extends Actor<Object> {
+        private final AtomicLong dispatched = new AtomicLong();
+
+        CountingActor(ExecutorService executor, MailboxType mailboxType, int capacity, int throughput) {
+            super(executor, mailboxType.create(capacity), throughput);
+        }
+
+        boolean tell(Object message) {
+            return enqueue(message);
+        }
+
+        @Override
+        protected void dispatch(Object message) {
+            // the actor dispatches from a single thread at a time
+            dispatched.lazySet(dispatched.get() + 1);
+        }
+    }
+}
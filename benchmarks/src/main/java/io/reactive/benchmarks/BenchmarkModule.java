@@ -0,0 +1,50 @@
+package io.reactive.benchmarks;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import io.reactive.common.configuration.RootModule;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The server configuration with some properties overridden by a benchmark.
+ */
+public class BenchmarkModule extends RootModule {
+    private final Map<String, String> overrides;
+
+    public BenchmarkModule() {
+        this(ImmutableMap.of());
+    }
+
+    public BenchmarkModule(@NotNull Map<String, String> overrides) {
+        this.overrides = overrides;
+    }
+
+    @Override
+    protected Properties loadProperties() throws Exception {
+        Properties properties = super.loadProperties();
+        properties.putAll(overrides);
+        return properties;
+    }
+}
@@ -0,0 +1,66 @@
+package io.reactive.benchmarks;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.util.Demand;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The demand is replenished by send callbacks while the sender claims it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class DemandBenchmark {
+    @State(Scope.Group)
+    public static class DemandState {
+        @Param({"1", "16"})
+        public long batch;
+
+        final Demand demand = new Demand();
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public long increaseDecrease(DemandState state) {
+        state.demand.increase(state.batch);
+        return state.demand.decrease(state.batch);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public long increase(DemandState state) {
+        return state.demand.increase(state.batch);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public long decrease(DemandState state) {
+        return state.demand.decrease(state.batch);
+    }
+}
@@ -0,0 +1,112 @@
+package io.reactive.benchmarks;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import io.reactive.server.configuration.ActorModule;
+import io.reactive.server.domain.ServerClientConnection;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.service.MessageSender;
+import io.reactive.server.service.ServerClientStore;
+import io.reactive.server.util.WebSocketUtils;
+import org.openjdk.jmh.annotations.*;
+
+import javax.websocket.Session;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * A broadcast to all the clients is an operation, it's finished once every connection got the message.
+ * Connections only count messages and give the demand back, so no I/O is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+    @Param({"1", "100", "1000"})
+    public int clients;
+
+    @Param({"0"})
+    public int shards;
+
+    private final LongAdder delivered = new LongAdder();
+
+    private ServerClientStore clientStore;
+    private MessageSender messageSender;
+    private WebSocketMessage message;
+
+    @Setup
+    public void setUp() {
+        Injector injector = Guice.createInjector(
+            new BenchmarkModule(ImmutableMap.of("server.sender.shards", String.valueOf(shards))),
+            new ActorModule()
+        );
+
+        clientStore = injector.getInstance(ServerClientStore.class);
+        messageSender = injector.getInstance(MessageSender.class);
+        message = injector.getInstance(WebSocketUtils.class).getMessage(Messages.hello());
+
+        for (long clientId = 0; clientId < clients; clientId++) {
+            clientStore.addConnection(new CountingConnection(clientId, mock(Session.class), delivered));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        clientStore.clear();
+    }
+
+    @Benchmark
+    public long broadcast() {
+        long expected = delivered.sum() + clients;
+
+        messageSender.broadcast(clientStore.getLiveClients(), message);
+
+        long sum;
+        while ((sum = delivered.sum()) < expected) {
+            Thread.onSpinWait();
+        }
+        return sum;
+    }
+
+    private static class CountingConnection extends ServerClientConnection {
+        private final LongAdder delivered;
+
+        CountingConnection(long userId, Session session, LongAdder delivered) {
+            super(userId, session, 100, result -> {});
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void onNext(WebSocketMessage item, long enqueuedNanos) {
+            delivered.increment();
+            // completes right away
+            getSubscription().request(1);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.reactive.benchmarks;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.util.Mailbox;
+import io.reactive.server.util.MailboxType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares actor mailboxes under the sender workload: many producers, a single consumer.
+ * QUEUE is the plain {@link ConcurrentLinkedQueue} with O(n) size(), the way Actor used it before mailboxes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailboxBenchmark {
+    private static final Object MESSAGE = new Object();
+
+    // the same guard MessageSenderImpl.addMessage() applies before enqueue
+    private static final int SIZE_LIMIT = 10000;
+
+    @State(Scope.Group)
+    public static class MailboxState {
+        @Param({"QUEUE", "LINKED", "MPSC_ARRAY"})
+        public String type;
+
+        @Param({"65536"})
+        public int capacity;
+
+        Mailbox<Object> mailbox;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            mailbox = "QUEUE".equals(type) ? new QueueMailbox<>() : MailboxType.valueOf(type).create(capacity);
+        }
+    }
+
+    @Benchmark
+    @Group("offerPoll")
+    @GroupThreads(4)
+    public boolean offer(MailboxState state) {
+        return state.mailbox.offer(MESSAGE);
+    }
+
+    @Benchmark
+    @Group("offerPoll")
+    @GroupThreads(1)
+    public Object poll(MailboxState state) {
+        return state.mailbox.poll();
+    }
+
+    @Benchmark
+    @Group("sizeOfferPoll")
+    @GroupThreads(4)
+    public boolean sizeAndOffer(MailboxState state) {
+        return state.mailbox.size() < SIZE_LIMIT && state.mailbox.offer(MESSAGE);
+    }
+
+    @Benchmark
+    @Group("sizeOfferPoll")
+    @GroupThreads(1)
+    public Object sizePoll(MailboxState state) {
+        return state.mailbox.poll();
+    }
+
+    private static class QueueMailbox<M> implements Mailbox<M> {
+        private final Queue<M> messages = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public boolean offer(@NotNull M message) {
+            return messages.offer(message);
+        }
+
+        @Nullable
+        @Override
+        public M poll() {
+            return messages.poll();
+        }
+
+        @Override
+        public int size() {
+            return messages.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return messages.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.reactive.benchmarks;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.util.ServerClientMessageList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producers add to a client's list while the sender drains it.
+ * With keys &gt; 0 the messages are conflated, so the list holds at most one message per key.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class MessageListBenchmark {
+    @State(Scope.Group)
+    public static class ListState {
+        @Param({"5000"})
+        public int maxMessages;
+
+        @Param({"100"})
+        public int drainBatch;
+
+        @Param({"0", "16"})
+        public int keys;
+
+        ServerClientMessageList messages;
+        WebSocketMessage[] payloads;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            messages = new ServerClientMessageList(maxMessages);
+
+            payloads = new WebSocketMessage[Math.max(1, keys)];
+            for (int i = 0; i < payloads.length; i++) {
+                payloads[i] = new WebSocketMessage("{}", 0L);
+                payloads[i].setKey(keys > 0 ? "STATE:" + i : null);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ProducerState {
+        int next;
+    }
+
+    @Benchmark
+    @Group("addDrain")
+    @GroupThreads(4)
+    public int add(ListState state, ProducerState producer) {
+        WebSocketMessage[] payloads = state.payloads;
+        return state.messages.add(payloads[producer.next++ % payloads.length]);
+    }
+
+    @Benchmark
+    @Group("addDrain")
+    @GroupThreads(1)
+    public int drain(ListState state, Blackhole blackhole) {
+        return state.messages.drainTo(blackhole::consume, state.drainBatch);
+    }
+}
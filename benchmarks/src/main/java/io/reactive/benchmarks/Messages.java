@@ -0,0 +1,55 @@
+package io.reactive.benchmarks;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Strings;
+import io.reactive.server.domain.Header;
+import io.reactive.server.domain.Message;
+import io.reactive.server.domain.MessageType;
+import org.joda.time.DateTime;
+
+public class Messages {
+    private Messages() {
+    }
+
+    public static Message hello() {
+        return message("{\"hello\":\"World\"}");
+    }
+
+    /**
+     * @param bytes approximate size of the message body
+     */
+    public static Message withPayload(int bytes) {
+        return message("{\"payload\":\"" + Strings.repeat("x", Math.max(0, bytes - 14)) + "\"}");
+    }
+
+    private static Message message(String body) {
+        Header header = new Header();
+        header.setMessageId("42");
+        header.setMessageType(MessageType.HELLO_MESSAGE);
+        header.setCreated(DateTime.now());
+
+        Message message = new Message();
+        message.setHeader(header);
+        message.setMessage(body);
+        return message;
+    }
+}
@@ -0,0 +1,69 @@
+package io.reactive.benchmarks;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Guice;
+import io.reactive.server.domain.Message;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.util.WebSocketUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of an outgoing message, done once per broadcast.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+@State(Scope.Benchmark)
+public class WebSocketMessageBenchmark {
+    @Param({"false", "true"})
+    public boolean binary;
+
+    @Param({"false", "true"})
+    public boolean directBuffers;
+
+    private WebSocketUtils webSocketUtils;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        webSocketUtils = Guice.createInjector(
+            new BenchmarkModule(
+                ImmutableMap.of(
+                    "server.send.binary", String.valueOf(binary),
+                    "server.send.direct.buffers", String.valueOf(directBuffers)
+                )
+            )
+        ).getInstance(WebSocketUtils.class);
+
+        message = Messages.hello();
+    }
+
+    @Benchmark
+    public WebSocketMessage getMessage() {
+        return webSocketUtils.getMessage(message);
+    }
+}
@@ -0,0 +1,137 @@
+package io.reactive.benchmarks.load;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.websocketx.*;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Counts received messages and records the latency from Header.created to the receipt.
+ */
+class LoadClientHandler extends SimpleChannelInboundHandler<Object> {
+    private static final Logger log = LoggerFactory.getLogger(LoadClientHandler.class);
+
+    private static final ByteBuf CREATED = Unpooled.unreleasableBuffer(
+        Unpooled.copiedBuffer("\"created\":\"", US_ASCII)
+    );
+
+    private final WebSocketClientHandshaker handshaker;
+    private final LongAdder received;
+    private final Recorder latency;
+    private ChannelPromise handshakeFuture;
+
+    // messages of a generator tick share the timestamp, so it's parsed only when changed
+    private ByteBuf lastCreated = Unpooled.EMPTY_BUFFER;
+    private long lastCreatedMillis;
+
+    LoadClientHandler(WebSocketClientHandshaker handshaker, LongAdder received, Recorder latency) {
+        this.handshaker = handshaker;
+        this.received = received;
+        this.latency = latency;
+    }
+
+    ChannelFuture handshakeFuture() {
+        return handshakeFuture;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        handshakeFuture = ctx.newPromise();
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        handshaker.handshake(ctx.channel());
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        lastCreated.release();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+        if (!handshaker.isHandshakeComplete()) {
+            try {
+                handshaker.finishHandshake(ctx.channel(), (FullHttpResponse) msg);
+                handshakeFuture.setSuccess();
+            } catch (WebSocketHandshakeException e) {
+                handshakeFuture.setFailure(e);
+            }
+            return;
+        }
+
+        if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) {
+            long now = System.currentTimeMillis();
+            received.increment();
+
+            long created = getCreated(((WebSocketFrame) msg).content());
+            if (created > 0) {
+                latency.recordValue(Math.max(0, now - created));
+            }
+        } else if (msg instanceof CloseWebSocketFrame) {
+            ctx.channel().close();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("Load client failed", cause);
+        if (!handshakeFuture.isDone()) {
+            handshakeFuture.setFailure(cause);
+        }
+        ctx.close();
+    }
+
+    private long getCreated(ByteBuf content) {
+        int start = ByteBufUtil.indexOf(CREATED, content);
+        if (start < 0) {
+            return -1;
+        }
+
+        start += CREATED.readableBytes();
+        int end = content.indexOf(start, content.writerIndex(), (byte) '"');
+        if (end < 0) {
+            return -1;
+        }
+
+        ByteBuf created = content.slice(start, end - start);
+        if (!ByteBufUtil.equals(created, lastCreated)) {
+            lastCreated.release();
+            lastCreated = Unpooled.copiedBuffer(created);
+            lastCreatedMillis = Instant.parse(created.toString(US_ASCII)).toEpochMilli();
+        }
+
+        return lastCreatedMillis;
+    }
+}
@@ -0,0 +1,109 @@
+package io.reactive.benchmarks.load;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import org.HdrHistogram.Recorder;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket clients sharing a single event loop group.
+ */
+class LoadClients implements AutoCloseable {
+    static final String THREAD_PREFIX = "Load client";
+
+    private final EventLoopGroup group = new NioEventLoopGroup(
+        0,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat(THREAD_PREFIX + "-%d")
+            .build()
+    );
+
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+
+    private final LongAdder received;
+    private final Recorder latency;
+
+    LoadClients(@NotNull LongAdder received, @NotNull Recorder latency) {
+        this.received = received;
+        this.latency = latency;
+    }
+
+    Channel connect(@NotNull URI url) throws InterruptedException {
+        LoadClientHandler handler = new LoadClientHandler(
+            WebSocketClientHandshakerFactory.newHandshaker(url, WebSocketVersion.V13, null, false, new DefaultHttpHeaders(), 65536),
+            received,
+            latency
+        );
+
+        Channel channel = new Bootstrap()
+            .group(group)
+            .channel(NioSocketChannel.class)
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    ch.pipeline().addLast(
+                        new HttpClientCodec(),
+                        new HttpObjectAggregator(65536),
+                        handler
+                    );
+                }
+            })
+            .connect(url.getHost(), url.getPort())
+            .sync()
+            .channel();
+
+        handler.handshakeFuture().sync();
+        channels.add(channel);
+        return channel;
+    }
+
+    void sendText(@NotNull Channel channel, @NotNull String message) {
+        channel.writeAndFlush(new TextWebSocketFrame(message));
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (Channel channel : channels) {
+            channel.close().sync();
+        }
+        group.shutdownGracefully().sync();
+    }
+}
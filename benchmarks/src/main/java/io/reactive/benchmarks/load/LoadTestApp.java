@@ -0,0 +1,146 @@
+package io.reactive.benchmarks.load;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import io.netty.channel.Channel;
+import io.reactive.benchmarks.BenchmarkModule;
+import io.reactive.benchmarks.Messages;
+import io.reactive.server.ReactiveWsServer;
+import io.reactive.server.UndertowWsServer;
+import io.reactive.server.configuration.ActorModule;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.service.ServerClientStore;
+import io.reactive.server.util.json.JsonMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts a server in-process, connects load clients over loopback, drives /generator and reports
+ * throughput, delivery latency (Header.created to receipt), GC time and allocations per message.
+ * <p>
+ * java -Dload.server=UNDERTOW -Dload.clients=1000 -cp benchmarks/target/benchmarks.jar io.reactive.benchmarks.load.LoadTestApp
+ */
+public class LoadTestApp {
+    static {
+        // the server logs a lot at debug level
+        if (System.getProperty("logback.configurationFile") == null) {
+            System.setProperty("logback.configurationFile", "logback-benchmarks.xml");
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestApp.class);
+
+    private static final String SERVER_URL = "ws://localhost:6644";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfiguration configuration = new LoadTestConfiguration();
+        log.info("Load test, {}", configuration);
+
+        Injector injector = Guice.createInjector(
+            new BenchmarkModule(configuration.getServerProperties()),
+            new ActorModule()
+        );
+
+        AutoCloseable server = startServer(injector, configuration.getServerType());
+
+        LongAdder received = new LongAdder();
+        Recorder latency = new Recorder(TimeUnit.MINUTES.toMillis(10), 3);
+
+        try (LoadClients clients = new LoadClients(received, latency)) {
+            for (int userId = 0; userId < configuration.getClients(); userId++) {
+                clients.connect(URI.create(SERVER_URL + "/client?userId=" + userId));
+            }
+
+            ServerClientStore clientStore = injector.getInstance(ServerClientStore.class);
+            while (clientStore.getLiveClients().size() < configuration.getClients()) {
+                Thread.sleep(10);
+            }
+            log.info("[{}] clients connected", configuration.getClients());
+
+            String message = injector.getInstance(JsonMapper.class)
+                .writeValueAsString(Messages.withPayload(configuration.getPayloadBytes()));
+            Channel generator = clients.connect(URI.create(SERVER_URL + "/generator"));
+            clients.sendText(generator, message);
+
+            log.info("Warming up for [{}] seconds", configuration.getWarmupSeconds());
+            Thread.sleep(TimeUnit.SECONDS.toMillis(configuration.getWarmupSeconds()));
+
+            latency.reset();
+            ProcessSnapshot start = new ProcessSnapshot(received.sum());
+
+            log.info("Measuring for [{}] seconds", configuration.getDurationSeconds());
+            Thread.sleep(TimeUnit.SECONDS.toMillis(configuration.getDurationSeconds()));
+
+            ProcessSnapshot end = new ProcessSnapshot(received.sum());
+            report(start, end, latency.getIntervalHistogram());
+            log.info("Server metrics: {}", injector.getInstance(MetricsRegistry.class).getSnapshot());
+
+            generator.close().sync();
+        } finally {
+            server.close();
+        }
+    }
+
+    private static AutoCloseable startServer(@NotNull Injector injector, @NotNull LoadTestConfiguration.ServerType serverType) throws Exception {
+        switch (serverType) {
+            case JETTY:
+                ReactiveWsServer jetty = injector.getInstance(ReactiveWsServer.class);
+                jetty.start();
+                return jetty::stop;
+            case UNDERTOW:
+                UndertowWsServer undertow = injector.getInstance(UndertowWsServer.class);
+                undertow.start();
+                return undertow::stop;
+            default:
+                throw new IllegalArgumentException("Unknown server type: " + serverType);
+        }
+    }
+
+    private static void report(@NotNull ProcessSnapshot start, @NotNull ProcessSnapshot end, @NotNull Histogram latency) {
+        long messages = end.received(start);
+        double seconds = end.seconds(start);
+        long perMessage = Math.max(1, messages);
+
+        log.info("Messages: [{}], throughput: [{}] msg/sec", messages, String.format("%.0f", messages / seconds));
+        log.info(
+            "Latency, ms: p50 [{}], p99 [{}], p999 [{}], max [{}]",
+            latency.getValueAtPercentile(50),
+            latency.getValueAtPercentile(99),
+            latency.getValueAtPercentile(99.9),
+            latency.getMaxValue()
+        );
+        log.info("GC: [{}] collections, [{}] ms", end.gcCount(start), end.gcTimeMillis(start));
+        log.info(
+            "Allocated per message, bytes: server [{}], load clients [{}]",
+            end.allocatedBytes(start, false) / perMessage,
+            end.allocatedBytes(start, true) / perMessage
+        );
+    }
+}
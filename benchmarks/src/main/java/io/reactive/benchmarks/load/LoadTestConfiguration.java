@@ -0,0 +1,84 @@
+package io.reactive.benchmarks.load;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * Load test settings, passed as system properties (-Dload.clients=1000 and so on).
+ */
+public class LoadTestConfiguration {
+    public enum ServerType {
+        JETTY,
+        UNDERTOW
+    }
+
+    private final ServerType serverType = ServerType.valueOf(System.getProperty("load.server", ServerType.JETTY.name()));
+    private final int clients = Integer.getInteger("load.clients", 100);
+    // per client, every period
+    private final int messages = Integer.getInteger("load.messages", 100_000);
+    private final int periodSeconds = Integer.getInteger("load.period.seconds", 1);
+    private final boolean batches = Boolean.parseBoolean(System.getProperty("load.batches", "true"));
+    private final int payloadBytes = Integer.getInteger("load.payload.bytes", 200);
+    private final int warmupSeconds = Integer.getInteger("load.warmup.seconds", 10);
+    private final int durationSeconds = Integer.getInteger("load.duration.seconds", 30);
+
+    public ServerType getServerType() {
+        return serverType;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    public int getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * @return application.properties overridden by the load test
+     */
+    public Map<String, String> getServerProperties() {
+        return ImmutableMap.of(
+            "server.messages.generator.number", String.valueOf(messages),
+            "server.messages.generator.period.seconds", String.valueOf(periodSeconds),
+            "server.messages.generator.batches", String.valueOf(batches)
+        );
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "server: %s, clients: %d, messages: %d per %ds, batches: %b, payload: %d bytes, warmup: %ds, duration: %ds",
+            serverType, clients, messages, periodSeconds, batches, payloadBytes, warmupSeconds, durationSeconds
+        );
+    }
+}
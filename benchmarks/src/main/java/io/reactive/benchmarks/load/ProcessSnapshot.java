@@ -0,0 +1,99 @@
+package io.reactive.benchmarks.load;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GC and per-thread allocation counters at some moment.
+ * Allocations of threads died between two snapshots are lost, pools of the servers and clients live long enough.
+ */
+class ProcessSnapshot {
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final long timeNanos;
+    private final long received;
+    private final long gcCount;
+    private final long gcTimeMillis;
+    private final Map<Long, Long> allocatedBytes = new HashMap<>();
+    private final Map<Long, String> threadNames = new HashMap<>();
+
+    ProcessSnapshot(long received) {
+        this.timeNanos = System.nanoTime();
+        this.received = received;
+
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        this.gcCount = count;
+        this.gcTimeMillis = time;
+
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] >= 0 && infos[i] != null) {
+                allocatedBytes.put(ids[i], allocated[i]);
+                threadNames.put(ids[i], infos[i].getThreadName());
+            }
+        }
+    }
+
+    double seconds(@NotNull ProcessSnapshot from) {
+        return (timeNanos - from.timeNanos) / 1e9;
+    }
+
+    long received(@NotNull ProcessSnapshot from) {
+        return received - from.received;
+    }
+
+    long gcCount(@NotNull ProcessSnapshot from) {
+        return gcCount - from.gcCount;
+    }
+
+    long gcTimeMillis(@NotNull ProcessSnapshot from) {
+        return gcTimeMillis - from.gcTimeMillis;
+    }
+
+    /**
+     * @param clients true to count the load clients threads only, false to count everything else
+     */
+    long allocatedBytes(@NotNull ProcessSnapshot from, boolean clients) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocatedBytes.entrySet()) {
+            boolean client = threadNames.get(entry.getKey()).startsWith(LoadClients.THREAD_PREFIX);
+            if (client == clients) {
+                total += entry.getValue() - from.allocatedBytes.getOrDefault(entry.getKey(), 0L);
+            }
+        }
+        return total;
+    }
+}
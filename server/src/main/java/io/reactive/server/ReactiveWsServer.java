@@ -22,6 +22,7 @@ package io.reactive.server;
 import io.reactive.server.endpoint.ClientEndpoint;
 import io.reactive.server.endpoint.IncomingMessageEndpoint;
 import io.reactive.server.endpoint.MessageGeneratorEndpoint;
+import io.reactive.server.endpoint.MetricsEndpoint;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
@@ -64,6 +65,7 @@ public class ReactiveWsServer {
         container.addEndpoint(ClientEndpoint.class);
         container.addEndpoint(IncomingMessageEndpoint.class);
         container.addEndpoint(MessageGeneratorEndpoint.class);
+        container.addEndpoint(MetricsEndpoint.class);
 
         server.setStopAtShutdown(true);
 
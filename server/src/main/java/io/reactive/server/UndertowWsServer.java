@@ -22,6 +22,7 @@ package io.reactive.server;
 import io.reactive.server.endpoint.ClientEndpoint;
 import io.reactive.server.endpoint.IncomingMessageEndpoint;
 import io.reactive.server.endpoint.MessageGeneratorEndpoint;
+import io.reactive.server.endpoint.MetricsEndpoint;
 import io.undertow.Handlers;
 import io.undertow.Undertow;
 import io.undertow.server.DefaultByteBufferPool;
@@ -80,6 +81,7 @@ public class UndertowWsServer {
                     .addEndpoint(ClientEndpoint.class)
                     .addEndpoint(IncomingMessageEndpoint.class)
                     .addEndpoint(MessageGeneratorEndpoint.class)
+                    .addEndpoint(MetricsEndpoint.class)
             )
             .setDeploymentName("Server");
 
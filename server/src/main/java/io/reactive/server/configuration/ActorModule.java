@@ -26,6 +26,7 @@ import com.google.inject.Provides;
 import javax.inject.Singleton;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class ActorModule extends AbstractModule {
     @Override
@@ -35,12 +36,22 @@ public class ActorModule extends AbstractModule {
     @Provides
     @Singleton
     @ActorScope
-    ExecutorService actorExecutor() {
-        return Executors.newFixedThreadPool(
-            32,
+    ExecutorService actorExecutor(ServerConfiguration configuration) {
+        return configuration.getExecutorType().create(configuration.getExecutorThreads(), "Actor executor");
+    }
+
+    /**
+     * A single timer thread shared by the server for short housekeeping, such as memory shedding.
+     * Work which might take longer (e.g. producer tasks) is handed off to the actor executor.
+     */
+    @Provides
+    @Singleton
+    @ActorScope
+    ScheduledExecutorService actorScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(
             new ThreadFactoryBuilder()
                 .setDaemon(true)
-                .setNameFormat("Actor executor-%d")
+                .setNameFormat("Actor scheduler-%d")
                 .build()
         );
     }
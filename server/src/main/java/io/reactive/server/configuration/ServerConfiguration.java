@@ -19,6 +19,10 @@ package io.reactive.server.configuration;
  * limitations under the License.
  */
 
+import io.reactive.server.util.EvictionPolicy;
+import io.reactive.server.util.ExecutorType;
+import io.reactive.server.util.MailboxType;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -29,6 +33,10 @@ public class ServerConfiguration {
     @Named("server.max.messages.in.flight")
     private int maxMessagesInFlight;
 
+    @Inject
+    @Named("server.demand.request.batch")
+    private int requestBatch;
+
     @Inject
     @Named("server.messages.multiplier")
     private int messageMultiplier;
@@ -49,10 +57,97 @@ public class ServerConfiguration {
     @Named("server.messages.generator.batches")
     private boolean generatorWithBatches;
 
+    @Inject
+    @Named("server.actor.mailbox.type")
+    private MailboxType mailboxType;
+
+    @Inject
+    @Named("server.actor.mailbox.capacity")
+    private int mailboxCapacity;
+
+    @Inject
+    @Named("server.actor.executor.type")
+    private ExecutorType executorType;
+
+    @Inject
+    @Named("server.actor.executor.threads")
+    private int executorThreads;
+
+    @Inject
+    @Named("server.actor.throughput")
+    private int actorThroughput;
+
+    @Inject
+    @Named("server.sender.shards")
+    private int senderShards;
+
+    @Inject
+    @Named("server.send.binary")
+    private boolean sendBinary;
+
+    @Inject
+    @Named("server.send.direct.buffers")
+    private boolean directBuffers;
+
+    @Inject
+    @Named("server.metrics.latency.per.connection")
+    private boolean latencyPerConnection;
+
+    @Inject
+    @Named("server.max.bytes.in.flight")
+    private long maxBytesInFlight;
+
+    @Inject
+    @Named("server.outbound.max.bytes")
+    private long maxOutboundBytes;
+
+    @Inject
+    @Named("server.memory.high.watermark.bytes")
+    private long memoryHighWatermark;
+
+    @Inject
+    @Named("server.memory.low.watermark.bytes")
+    private long memoryLowWatermark;
+
+    @Inject
+    @Named("server.producer.credits")
+    private int producerCredits;
+
+    @Inject
+    @Named("server.window.adaptive")
+    private boolean adaptiveWindow;
+
+    @Inject
+    @Named("server.window.min")
+    private int minWindow;
+
+    @Inject
+    @Named("server.window.max")
+    private int maxWindow;
+
+    @Inject
+    @Named("server.window.target.latency.micros")
+    private long windowTargetLatency;
+
+    @Inject
+    @Named("server.eviction.policy")
+    private EvictionPolicy evictionPolicy;
+
+    @Inject
+    @Named("server.eviction.gap.notification")
+    private boolean gapNotification;
+
     public int getMaxMessagesInFlight() {
         return maxMessagesInFlight;
     }
 
+    /**
+     * @return how many completed sends are given back to the demand at once
+     */
+    public int getRequestBatch() {
+        return requestBatch;
+    }
+
     public int getMessageMultiplier() {
         return messageMultiplier;
     }
@@ -72,4 +167,128 @@ public class ServerConfiguration {
     public boolean isGeneratorWithBatches() {
         return generatorWithBatches;
     }
+
+    public MailboxType getMailboxType() {
+        return mailboxType;
+    }
+
+    public ExecutorType getExecutorType() {
+        return executorType;
+    }
+
+    /**
+     * @return a number of actor threads, ignored by virtual threads
+     */
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    /**
+     * @return max messages dispatched by an actor per run, 0 means unlimited
+     */
+    public int getActorThroughput() {
+        return actorThroughput;
+    }
+
+    public int getMailboxCapacity() {
+        return mailboxCapacity;
+    }
+
+    /**
+     * @return number of sender actors, 0 means a number of available processors
+     */
+    public int getSenderShards() {
+        return senderShards;
+    }
+
+    /**
+     * @return true if messages are sent as binary frames from the shared encoded payload
+     */
+    public boolean isSendBinary() {
+        return sendBinary;
+    }
+
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * @return true if latency histograms are kept for every connection, besides the aggregated ones
+     */
+    public boolean isLatencyPerConnection() {
+        return latencyPerConnection;
+    }
+
+    /**
+     * @return bytes in flight of a connection, 0 means unlimited
+     */
+    public long getMaxBytesInFlight() {
+        return maxBytesInFlight;
+    }
+
+    /**
+     * @return bytes in flight of all the connections, 0 means unlimited
+     */
+    public long getMaxOutboundBytes() {
+        return maxOutboundBytes;
+    }
+
+    /**
+     * @return queued and in flight bytes, producers are slowed down and the largest queues are evicted above it,
+     * 0 means unlimited
+     */
+    public long getMemoryHighWatermark() {
+        return memoryHighWatermark;
+    }
+
+    /**
+     * @return queued and in flight bytes, producers are not slowed down anymore below it
+     */
+    public long getMemoryLowWatermark() {
+        return memoryLowWatermark;
+    }
+
+    /**
+     * @return messages a producer might send ahead, 0 means the producer isn't given any credits
+     */
+    public int getProducerCredits() {
+        return producerCredits;
+    }
+
+    /**
+     * @return true if messages in flight of a connection are adjusted by send latency,
+     * starting from {@link #getMaxMessagesInFlight()}
+     */
+    public boolean isAdaptiveWindow() {
+        return adaptiveWindow;
+    }
+
+    public int getMinWindow() {
+        return minWindow;
+    }
+
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    /**
+     * @return sends completed slower than this make the window smaller
+     */
+    public long getWindowTargetLatency() {
+        return windowTargetLatency;
+    }
+
+    /**
+     * @return what happens when a client queue is full
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * @return true if a client gets a GAP frame with a number of messages it has lost
+     */
+    public boolean isGapNotification() {
+        return gapNotification;
+    }
 }
@@ -0,0 +1,61 @@
+package io.reactive.server.domain;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * Body of {@link MessageType#GAP}: how many messages were dropped since the previous notification.
+ */
+public class GapMsg {
+    @JsonProperty(required = true)
+    private long evicted;
+
+    public long getEvicted() {
+        return evicted;
+    }
+
+    public void setEvicted(long evicted) {
+        this.evicted = evicted;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GapMsg that = (GapMsg) o;
+        return evicted == that.evicted;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(evicted);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("evicted", evicted)
+            .toString();
+    }
+}
@@ -20,6 +20,7 @@ package io.reactive.server.domain;
  */
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
@@ -43,6 +44,10 @@ public class Header implements Serializable {
     @JsonProperty(required = true)
     private DateTime created;
 
+    // an entity the message is about, conflated message types keep the latest message per key
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String key;
+
     @JsonIgnore
     private Map<String, String> mdcContext;
 
@@ -78,6 +83,14 @@ public class Header implements Serializable {
         this.created = created;
     }
 
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
     @Override
     public boolean equals(Object object) {
         if (this == object) {
@@ -96,12 +109,13 @@ public class Header implements Serializable {
         return equal(messageId, o.messageId)
             && equal(messageType, o.messageType)
             && equal(recipient, o.recipient)
-            && equal(created, o.created);
+            && equal(created, o.created)
+            && equal(key, o.key);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(messageId, messageType, recipient, created);
+        return Objects.hashCode(messageId, messageType, recipient, created, key);
     }
 
     @Override
@@ -111,6 +125,7 @@ public class Header implements Serializable {
             .addValue(messageType)
             .addValue(recipient)
             .addValue(created)
+            .addValue(key)
             .toString();
     }
 }
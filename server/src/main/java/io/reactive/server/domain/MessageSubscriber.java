@@ -0,0 +1,51 @@
+package io.reactive.server.domain;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A subscriber to client messages, which gets more details than the plain Reactive Streams signals.
+ */
+public interface MessageSubscriber extends Flow.Subscriber<WebSocketMessage> {
+    /**
+     * @param enqueuedNanos when the message was added to the client queue
+     */
+    default void onNext(WebSocketMessage item, long enqueuedNanos) {
+        onNext(item);
+    }
+
+    /**
+     * @return a session to route {@link RecipientMode#SINGLE} messages to, null if there is no one
+     */
+    @Nullable
+    default String getSessionId() {
+        return null;
+    }
+
+    /**
+     * Called when messages are left in the queue, because the demand is exhausted.
+     */
+    default void onDemandIsFullFilled() {
+    }
+}
@@ -20,6 +20,7 @@ package io.reactive.server.domain;
  */
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 import java.util.Map;
@@ -28,20 +29,48 @@ import static com.google.common.collect.Maps.uniqueIndex;
 import static io.reactive.server.domain.MessageType.DirectionType.OUTGOING;
 
 public enum MessageType {
-    HELLO_MESSAGE(true, OUTGOING);
+    HELLO_MESSAGE(true, OUTGOING, false),
+    // the server has dropped messages for the client, see EvictionPolicy
+    GAP(false, OUTGOING, false),
+    // a producer is allowed to send more messages, see InboundSubscriber
+    CREDIT(false, OUTGOING, false),
+    // the latest state of an entity (Header.key), a client needs only the newest one
+    STATE(false, OUTGOING, true);
 
     private final boolean supportHistory;
     private final DirectionType type;
+    private final boolean conflated;
 
-    MessageType(boolean supportHistory, DirectionType type) {
+    MessageType(boolean supportHistory, DirectionType type, boolean conflated) {
         this.supportHistory = supportHistory;
         this.type = type;
+        this.conflated = conflated;
     }
 
     public boolean isSupportHistory() {
         return supportHistory;
     }
 
+    /**
+     * @return true if a pending message is replaced by a newer one with the same conflation key
+     */
+    public boolean isConflated() {
+        return conflated;
+    }
+
+    /**
+     * @param header
+     * @return a key of the message in a client queue or null if the message type is not conflated
+     */
+    @Nullable
+    public String getConflationKey(@NotNull Header header) {
+        if (!conflated) {
+            return null;
+        }
+
+        return header.getKey() != null ? name() + ':' + header.getKey() : name();
+    }
+
     @NotNull
     public static MessageType fromOrdinal(int ordinal) {
         return ordinalLookup.get(ordinal);
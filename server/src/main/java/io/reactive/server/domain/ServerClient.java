@@ -20,21 +20,21 @@ package io.reactive.server.domain;
  */
 
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArrayList;
-
-import static com.google.common.collect.ImmutableList.copyOf;
 
 public class ServerClient {
     private static final Logger log = LoggerFactory.getLogger(ServerClient.class);
 
     private final long id;
-    private final CopyOnWriteArrayList<ServerClientConnection> connections = new CopyOnWriteArrayList<>();
+    // immutable snapshot, swapped on add/remove, so readers neither lock nor copy
+    private volatile ImmutableList<ServerClientConnection> connections = ImmutableList.of();
 
     public ServerClient(long id) {
         this.id = id;
@@ -44,16 +44,52 @@ public class ServerClient {
         return id;
     }
 
-    public void addConnection(@NotNull ServerClientConnection connection) {
-        connections.addIfAbsent(connection);
+    public synchronized void addConnection(@NotNull ServerClientConnection connection) {
+        ImmutableList<ServerClientConnection> current = connections;
+        if (!current.contains(connection)) {
+            connections = ImmutableList.<ServerClientConnection>builderWithExpectedSize(current.size() + 1)
+                .addAll(current)
+                .add(connection)
+                .build();
+        }
+    }
+
+    /**
+     * @param connection might be another instance for the same session
+     * @return the removed connection, null if there is no such one
+     */
+    @Nullable
+    public ServerClientConnection removeConnection(@NotNull ServerClientConnection connection) {
+        return removeConnection(connection.getSessionId());
     }
 
-    public void removeConnection(@NotNull ServerClientConnection connection) {
-        connections.remove(connection);
+    /**
+     * @return the removed connection, null if there is no such one
+     */
+    @Nullable
+    public synchronized ServerClientConnection removeConnection(@NotNull String sessionId) {
+        ImmutableList<ServerClientConnection> current = connections;
+        ServerClientConnection removed = null;
+        ImmutableList.Builder<ServerClientConnection> builder = ImmutableList.builderWithExpectedSize(current.size());
+        for (ServerClientConnection existing : current) {
+            if (removed == null && sessionId.equals(existing.getSessionId())) {
+                removed = existing;
+            } else {
+                builder.add(existing);
+            }
+        }
+
+        if (removed != null) {
+            connections = builder.build();
+        }
+        return removed;
     }
 
+    /**
+     * @return the current snapshot, it's never modified (a new one is published on add/remove)
+     */
     public List<ServerClientConnection> getConnections() {
-        return copyOf(connections);
+        return connections;
     }
 
     @Override
@@ -19,37 +19,112 @@ package io.reactive.server.domain;
  * limitations under the License.
  */
 
+import com.google.common.base.Ascii;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import io.reactive.server.metrics.LatencyMetrics;
+import io.reactive.server.metrics.MessageLatency;
+import io.reactive.server.util.AdaptiveWindow;
 import io.reactive.server.util.WebSocketSubscription;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
 import javax.websocket.SendResult;
 import javax.websocket.Session;
+import java.io.IOException;
 import java.util.Objects;
 import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
-public class ServerClientConnection implements Flow.Subscriber<WebSocketMessage> {
+public class ServerClientConnection implements MessageSubscriber {
     private static final Logger log = LoggerFactory.getLogger(ServerClientConnection.class);
 
+    private static final int MAX_REASON_LENGTH = 100;
+
     private final long userId;
     private final Session session;
-    private final int maxMessagesInFlight;
+    private final AdaptiveWindow window;
+    private final int requestBatch;
     private final Consumer<SendResult> resultHandler;
+    private final boolean binary;
     private volatile boolean authenticated;
 
+    @Nullable
+    private final MessageLatency latency;
+    @Nullable
+    private final MessageLatency connectionLatency;
+
     private WebSocketSubscription subscription;
 
     private final AtomicInteger demandIsFullFilledEvents = new AtomicInteger();
     private final AtomicInteger sentMessages = new AtomicInteger();
+    // credits of completed sends, the demand is replenished when there are requestBatch of them
+    private final AtomicLong pendingCredits = new AtomicLong();
+    // completed sends to reuse, only the dispatching thread takes them, so there is no ABA
+    private final AtomicReference<InFlightSend> freeSends = new AtomicReference<>();
 
     public ServerClientConnection(long userId, Session session, int maxMessagesInFlight, Consumer<SendResult> resultHandler) {
+        this(userId, session, maxMessagesInFlight, 1, false, resultHandler);
+    }
+
+    /**
+     * @param requestBatch completed sends are given back to the demand by batches of this size
+     * @param binary send the shared encoded payload as a binary frame instead of a text one
+     */
+    public ServerClientConnection(
+        long userId,
+        Session session,
+        int maxMessagesInFlight,
+        int requestBatch,
+        boolean binary,
+        Consumer<SendResult> resultHandler
+    ) {
+        this(userId, session, maxMessagesInFlight, requestBatch, binary, resultHandler, null);
+    }
+
+    /**
+     * @param latencyMetrics null to not record latency
+     */
+    public ServerClientConnection(
+        long userId,
+        Session session,
+        int maxMessagesInFlight,
+        int requestBatch,
+        boolean binary,
+        Consumer<SendResult> resultHandler,
+        @Nullable LatencyMetrics latencyMetrics
+    ) {
+        this(userId, session, AdaptiveWindow.fixed(maxMessagesInFlight), requestBatch, binary, resultHandler, latencyMetrics);
+    }
+
+    /**
+     * @param window messages in flight
+     * @param latencyMetrics null to not record latency
+     */
+    public ServerClientConnection(
+        long userId,
+        Session session,
+        AdaptiveWindow window,
+        int requestBatch,
+        boolean binary,
+        Consumer<SendResult> resultHandler,
+        @Nullable LatencyMetrics latencyMetrics
+    ) {
         this.userId = userId;
         this.session = session;
-        this.maxMessagesInFlight = maxMessagesInFlight;
+        this.window = window;
+        // a bigger batch would never be completed once all messages in flight are sent
+        this.requestBatch = Math.max(1, Math.min(requestBatch, window.getMin()));
         this.resultHandler = resultHandler;
+        this.binary = binary;
+        this.latency = latencyMetrics != null ? latencyMetrics.getAggregated() : null;
+        this.connectionLatency = latencyMetrics != null ? latencyMetrics.newConnectionLatency() : null;
     }
 
     public boolean isAuthenticated() {
@@ -68,6 +143,11 @@ public class ServerClientConnection implements Flow.Subscriber<WebSocketMessage>
         return session;
     }
 
+    @Override
+    public String getSessionId() {
+        return session.getId();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -92,35 +172,84 @@ public class ServerClientConnection implements Flow.Subscriber<WebSocketMessage>
 
     @Override
     public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            // a connection is subscribed once (Reactive Streams §2.5)
+            subscription.cancel();
+            return;
+        }
+
         this.subscription = (WebSocketSubscription) subscription;
 
-        doRequest(maxMessagesInFlight);
+        doRequest(window.getWindow());
     }
 
     @Override
     public void onNext(WebSocketMessage item) {
+        onNext(item, System.nanoTime());
+    }
+
+    @Override
+    public void onNext(WebSocketMessage item, long enqueuedNanos) {
+        long dispatchedNanos = System.nanoTime();
+        if (latency != null) {
+            onDispatched(dispatchedNanos - enqueuedNanos);
+        }
+
+        int size = item.getSize();
+        subscription.charge(size);
+
+        InFlightSend handler = acquireSend();
+        handler.dispatchedNanos = dispatchedNanos;
+        handler.createdMillis = item.getTimestamp();
+        handler.size = size;
         try {
-            session.getAsyncRemote().sendText(item.getPayload(), this::onResult);
+            if (binary) {
+                // no char to byte conversion per send, the buffer is shared
+                session.getAsyncRemote().sendBinary(item.getEncodedPayload(), handler);
+            } else {
+                session.getAsyncRemote().sendText(item.getPayload(), handler);
+            }
         } catch (Exception e) {
             log.error("Can't send the message to client", e);
+            releaseSend(handler);
+            subscription.refund(size);
+            resultHandler.accept(new SendResult(e));
             // TODO: close connection?
         } finally {
             onSendMessage();
         }
     }
 
+    /**
+     * The publisher has failed (e.g. the client is too slow), so the client should reconnect later.
+     */
     @Override
     public void onError(Throwable throwable) {
+        log.warn("Messages of the user [{}] are failed: [{}]", userId, throwable.getMessage());
+        // a reason phrase is limited by 123 bytes
+        String reason = Ascii.truncate(Strings.nullToEmpty(throwable.getMessage()), MAX_REASON_LENGTH, "");
+        close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
     }
 
     @Override
     public void onComplete() {
+        close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "No more messages"));
+    }
+
+    /**
+     * Stops receiving messages, e.g. when the session is closed.
+     */
+    public void cancel() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
     }
 
     public WebSocketSubscription getSubscription() {
         return subscription;
     }
 
+    @Override
     public void onDemandIsFullFilled() {
         demandIsFullFilledEvents.incrementAndGet();
     }
@@ -137,11 +266,80 @@ public class ServerClientConnection implements Flow.Subscriber<WebSocketMessage>
         return sentMessages.get();
     }
 
-    private void doRequest(int messages) {
+    /**
+     * @return current number of messages in flight allowed
+     */
+    public int getWindow() {
+        return window.getWindow();
+    }
+
+    /**
+     * @return null if per connection latency is disabled
+     */
+    @Nullable
+    public MessageLatency getLatency() {
+        return connectionLatency;
+    }
+
+    private void doRequest(long messages) {
         subscription.request(messages);
     }
 
-    private void onResult(SendResult result) {
+    private void close(CloseReason reason) {
+        try {
+            if (session.isOpen()) {
+                session.close(reason);
+            }
+        } catch (IOException e) {
+            log.error("Can't close a session of the user [{}]", userId, e);
+        }
+    }
+
+    private void onDispatched(long enqueueToDispatchNanos) {
+        latency.onDispatched(enqueueToDispatchNanos);
+        if (connectionLatency != null) {
+            connectionLatency.onDispatched(enqueueToDispatchNanos);
+        }
+    }
+
+    private InFlightSend acquireSend() {
+        for (;;) {
+            InFlightSend send = freeSends.get();
+            if (send == null) {
+                return new InFlightSend();
+            }
+            if (freeSends.compareAndSet(send, send.next)) {
+                send.next = null;
+                return send;
+            }
+        }
+    }
+
+    private void releaseSend(InFlightSend send) {
+        for (;;) {
+            InFlightSend head = freeSends.get();
+            send.next = head;
+            if (freeSends.compareAndSet(head, send)) {
+                return;
+            }
+        }
+    }
+
+    private void onResult(SendResult result, long dispatchedNanos, long createdMillis, int size) {
+        subscription.refund(size);
+
+        boolean measured = latency != null || !window.isFixed();
+        long dispatchToComplete = measured ? System.nanoTime() - dispatchedNanos : 0;
+
+        if (latency != null) {
+            long total = System.currentTimeMillis() - createdMillis;
+
+            latency.onCompleted(dispatchToComplete, total);
+            if (connectionLatency != null) {
+                connectionLatency.onCompleted(dispatchToComplete, total);
+            }
+        }
+
         if (result.getException() != null) {
             log.error("Can' send the message", result.getException());
         }
@@ -149,6 +347,34 @@ public class ServerClientConnection implements Flow.Subscriber<WebSocketMessage>
         resultHandler.accept(result);
 
         // increase demand
-        doRequest(1);
+        int credits = window.onCompleted(dispatchToComplete, result.getException() != null);
+        if (credits > 0 && pendingCredits.addAndGet(credits) >= requestBatch) {
+            long taken = pendingCredits.getAndSet(0);
+            if (taken > 0) {
+                doRequest(taken);
+            }
+        }
+    }
+
+    /**
+     * A send in flight, it's reused once completed, so a send doesn't allocate a handler.
+     * The pool grows up to the most messages in flight the connection has had.
+     */
+    private final class InFlightSend implements SendHandler {
+        private long dispatchedNanos;
+        private long createdMillis;
+        private int size;
+        private InFlightSend next;
+
+        @Override
+        public void onResult(SendResult result) {
+            long dispatchedNanos = this.dispatchedNanos;
+            long createdMillis = this.createdMillis;
+            int size = this.size;
+            // released first, so the next dispatch might reuse it
+            releaseSend(this);
+
+            ServerClientConnection.this.onResult(result, dispatchedNanos, createdMillis, size);
+        }
     }
 }
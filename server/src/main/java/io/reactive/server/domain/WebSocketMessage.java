@@ -19,19 +19,48 @@ package io.reactive.server.domain;
  * limitations under the License.
  */
 
+import com.google.common.base.Utf8;
+
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * An encoded message. The same instance might be queued for many clients (see MessageSender.broadcast()),
+ * so it shouldn't be modified once it's queued.
+ */
 public class WebSocketMessage implements Serializable {
     private final String payload;
     private final long timestamp;
+    // UTF-8 bytes, fixed on creation so queue and budget accounting never drift
+    private final int size;
+
+    // read-only UTF-8 payload, shared between all connections
+    private transient volatile ByteBuffer encodedPayload;
 
     // options for sender
     protected transient boolean expirable = true;
     private transient RecipientMode mode;
     private transient String sessionId;
+    // messages with the same key might be conflated, see MessageType.getConflationKey()
+    private transient String key;
 
     public WebSocketMessage(String payload, long timestamp) {
+        this(payload, Utf8.encodedLength(payload), timestamp);
+    }
+
+    /**
+     * @param encodedPayload UTF-8 encoded payload, heap or direct
+     */
+    public WebSocketMessage(String payload, ByteBuffer encodedPayload, long timestamp) {
+        this(payload, encodedPayload.remaining(), timestamp);
+        this.encodedPayload = encodedPayload.asReadOnlyBuffer();
+    }
+
+    private WebSocketMessage(String payload, int size, long timestamp) {
         this.payload = payload;
+        this.size = size;
         this.timestamp = timestamp;
         // by default, send a message to all connections
         this.mode = RecipientMode.ALL;
@@ -41,6 +70,28 @@ public class WebSocketMessage implements Serializable {
         return payload;
     }
 
+    /**
+     * The payload is encoded on the first call only.
+     *
+     * @return a new view of the shared buffer, so the caller may move its position
+     */
+    public ByteBuffer getEncodedPayload() {
+        ByteBuffer encoded = encodedPayload;
+        if (encoded == null) {
+            // a race is harmless, the same bytes are encoded twice at most
+            encoded = ByteBuffer.wrap(payload.getBytes(UTF_8)).asReadOnlyBuffer();
+            encodedPayload = encoded;
+        }
+        return encoded.duplicate();
+    }
+
+    /**
+     * @return UTF-8 encoded size, the same before and after the payload is encoded
+     */
+    public int getSize() {
+        return size;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -61,6 +112,14 @@ public class WebSocketMessage implements Serializable {
         this.sessionId = sessionId;
     }
 
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
     public boolean isExpirable() {
         return expirable;
     }
@@ -93,9 +93,7 @@ public class ClientEndpoint {
 
             checkNotNull(userId, "User id is required!");
 
-            ServerClientConnection clientConnection = connectionFactory.create(userId, session);
-
-            clientStore.removeConnection(clientConnection);
+            clientStore.removeConnection(userId, session.getId());
         } catch (Exception e) {
             log.error("Can't close the connection", e);
 
@@ -112,9 +110,7 @@ public class ClientEndpoint {
 
             checkNotNull(userId, "User id is required!");
 
-            ServerClientConnection clientConnection = connectionFactory.create(userId, session);
-
-            clientStore.removeConnection(clientConnection);
+            clientStore.removeConnection(userId, session.getId());
         } catch (Exception e) {
             log.error("Can't remove connection for user [{}]", session.getQueryString(), e);
         }
@@ -19,10 +19,10 @@ package io.reactive.server.endpoint;
  * limitations under the License.
  */
 
-import io.reactive.server.configuration.ServerConfiguration;
 import io.reactive.server.domain.Message;
-import io.reactive.server.service.MessageSender;
-import io.reactive.server.service.ServerClientStore;
+import io.reactive.server.service.InboundSubscriber;
+import io.reactive.server.util.CreditSubscription;
+import io.reactive.server.util.WebSocketUtils;
 import io.reactive.server.util.WsEndpointConfigurator;
 import io.reactive.server.util.json.JsonMapper;
 import org.slf4j.Logger;
@@ -33,32 +33,37 @@ import javax.websocket.*;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
 
+/**
+ * Messages of a producer, broadcasted to all the clients. The producer is given credits by CREDIT frames,
+ * see {@link InboundSubscriber}.
+ */
 @ServerEndpoint(value = "/message", configurator = WsEndpointConfigurator.class)
 public class IncomingMessageEndpoint {
     private static final Logger log = LoggerFactory.getLogger(IncomingMessageEndpoint.class);
 
     @Inject
-    private ServerClientStore clientStore;
-
-    @Inject
-    private MessageSender messageSender;
+    private JsonMapper objectMapper;
 
     @Inject
-    private JsonMapper objectMapper;
+    private WebSocketUtils webSocketUtils;
 
+    // an endpoint instance per connection
     @Inject
-    private ServerConfiguration serverConfiguration;
+    private InboundSubscriber subscriber;
 
     @OnOpen
     public void onOpen(Session session, EndpointConfig config) {
+        subscriber.onSubscribe(new CreditSubscription(session, webSocketUtils));
     }
 
     @OnClose
     public void onClose(Session session, javax.websocket.CloseReason closeReason) {
+        subscriber.onComplete();
     }
 
     @OnError
     public void onError(Session session, Throwable thr) {
+        subscriber.onError(thr);
     }
 
     @OnMessage
@@ -71,22 +76,6 @@ public class IncomingMessageEndpoint {
             throw new IllegalArgumentException("Invalid message!");
         }
 
-        if (log.isTraceEnabled()) {
-            log.trace("Sending [{}] messages", serverConfiguration.getMessageMultiplier());
-        }
-
-        for (int i = 0; i < serverConfiguration.getMessageMultiplier(); i++) {
-            clientStore.getClients().forEach(
-                client -> client.getConnections().forEach(
-                    connection -> {
-                        try {
-                            messageSender.addMessage(client.getId(), userMessage);
-                        } catch (Exception e) {
-                            log.error("Can't send a message", e);
-                        }
-                    }
-                )
-            );
-        }
+        subscriber.onNext(userMessage);
     }
 }
@@ -22,10 +22,14 @@ package io.reactive.server.endpoint;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.reactive.server.configuration.ServerConfiguration;
 import io.reactive.server.domain.Message;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.service.MemoryAccountant;
 import io.reactive.server.service.MessageSender;
 import io.reactive.server.service.ServerClientStore;
+import io.reactive.server.util.WebSocketUtils;
 import io.reactive.server.util.WsEndpointConfigurator;
 import io.reactive.server.util.json.JsonMapper;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,7 +37,7 @@ import javax.inject.Inject;
 import javax.websocket.*;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -56,6 +60,12 @@ public class MessageGeneratorEndpoint {
     @Inject
     private ServerConfiguration serverConfiguration;
 
+    @Inject
+    private WebSocketUtils webSocketUtils;
+
+    @Inject
+    private MemoryAccountant memoryAccountant;
+
     private final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(
         1,
         new ThreadFactoryBuilder()
@@ -94,39 +104,37 @@ public class MessageGeneratorEndpoint {
         generator = executorService.scheduleWithFixedDelay(
             () -> {
                 try {
+                    // stamped on every tick, so a receiver can measure the delivery latency;
+                    // encoded once per tick, all recipients share the same payload
+                    userMessage.getHeader().setCreated(DateTime.now());
+                    WebSocketMessage webSocketMessage = webSocketUtils.getMessage(userMessage);
+
                     if (serverConfiguration.isGeneratorWithBatches()) {
                         int buckets = serverConfiguration.getGeneratorMessages() / serverConfiguration.getMaxMessages();
+                        List<WebSocketMessage> messages = Collections.nCopies(serverConfiguration.getMaxMessages(), webSocketMessage);
                         for (int i = 0; i < buckets; i++) {
-                            List<Message> messages = new ArrayList<>(serverConfiguration.getMaxMessages());
-                            for (int j = 0; j < serverConfiguration.getMaxMessages(); j++) {
-                                messages.add(userMessage);
+                            // the rest of the tick is skipped, while the server is overloaded
+                            if (!memoryAccountant.tryAcquireCapacity()) {
+                                break;
                             }
 
-                            clientStore.getClients().forEach(
-                                client -> client.getConnections().forEach(
-                                    connection -> {
-                                        try {
-                                            messageSender.addMessages(client.getId(), messages);
-                                        } catch (Exception e) {
-                                            log.error("Can't send a message", e);
-                                        }
-                                    }
-                                )
-                            );
+                            try {
+                                messageSender.broadcast(clientStore.getLiveClients(), messages);
+                            } catch (Exception e) {
+                                log.error("Can't send a message", e);
+                            }
                         }
                     } else {
                         for (int i = 0; i < serverConfiguration.getGeneratorMessages(); i++) {
-                            clientStore.getClients().forEach(
-                                client -> client.getConnections().forEach(
-                                    connection -> {
-                                        try {
-                                            messageSender.addMessage(client.getId(), userMessage);
-                                        } catch (Exception e) {
-                                            log.error("Can't send a message", e);
-                                        }
-                                    }
-                                )
-                            );
+                            if (!memoryAccountant.tryAcquireCapacity()) {
+                                break;
+                            }
+
+                            try {
+                                messageSender.broadcast(clientStore.getLiveClients(), webSocketMessage);
+                            } catch (Exception e) {
+                                log.error("Can't send a message", e);
+                            }
                         }
                     }
                 } catch (Exception e) {
@@ -0,0 +1,69 @@
+package io.reactive.server.endpoint;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.WsEndpointConfigurator;
+import io.reactive.server.util.json.JsonMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.websocket.*;
+import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
+
+/**
+ * Sends a metrics snapshot as JSON on open and as a reply to any message.
+ */
+@ServerEndpoint(value = "/metrics", configurator = WsEndpointConfigurator.class)
+public class MetricsEndpoint {
+    private static final Logger log = LoggerFactory.getLogger(MetricsEndpoint.class);
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    @Inject
+    private JsonMapper objectMapper;
+
+    @OnOpen
+    public void onOpen(Session session, EndpointConfig config) throws IOException {
+        session.getAsyncRemote().sendText(getSnapshot());
+    }
+
+    @OnClose
+    public void onClose(Session session, javax.websocket.CloseReason closeReason) {
+    }
+
+    @OnError
+    public void onError(Session session, Throwable thr) {
+        log.error("Metrics session failed", thr);
+    }
+
+    @OnMessage
+    public String onMessage(String message) throws IOException {
+        return getSnapshot();
+    }
+
+    private String getSnapshot() throws IOException {
+        return objectMapper.writeValueAsString(metricsRegistry.getSnapshot());
+    }
+}
@@ -0,0 +1,73 @@
+package io.reactive.server.metrics;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A client queue, to find slow consumers.
+ */
+public class ClientQueueStats {
+    private final long clientId;
+    private final int queued;
+    private final long bytes;
+    private final long evicted;
+    private final long conflated;
+
+    public ClientQueueStats(long clientId, int queued, long bytes, long evicted, long conflated) {
+        this.clientId = clientId;
+        this.queued = queued;
+        this.bytes = bytes;
+        this.evicted = evicted;
+        this.conflated = conflated;
+    }
+
+    public long getClientId() {
+        return clientId;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getEvicted() {
+        return evicted;
+    }
+
+    public long getConflated() {
+        return conflated;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("clientId", clientId)
+            .add("queued", queued)
+            .add("bytes", bytes)
+            .add("evicted", evicted)
+            .add("conflated", conflated)
+            .toString();
+    }
+}
@@ -0,0 +1,87 @@
+package io.reactive.server.metrics;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.ServerClient;
+import io.reactive.server.domain.ServerClientConnection;
+import io.reactive.server.service.ServerClientStore;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregated latency of all the connections, is always on.
+ * Per connection latency is optional (server.metrics.latency.per.connection), it costs memory for every connection.
+ * It's reported as "latency.connections" by "userId/sessionId" of the open connections.
+ */
+@Singleton
+public class LatencyMetrics {
+    private final MessageLatency aggregated = new MessageLatency(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final boolean perConnection;
+
+    @Inject
+    public LatencyMetrics(
+        ServerConfiguration serverConfiguration,
+        MetricsRegistry metricsRegistry,
+        // the store depends on the sender, which records the latency
+        Provider<ServerClientStore> clientStore
+    ) {
+        this.perConnection = serverConfiguration.isLatencyPerConnection();
+
+        metricsRegistry.report("latency", aggregated::getSummary);
+        if (perConnection) {
+            metricsRegistry.report("latency.connections", () -> getConnectionSummaries(clientStore.get()));
+        }
+    }
+
+    public MessageLatency getAggregated() {
+        return aggregated;
+    }
+
+    /**
+     * @return null if per connection latency is disabled
+     */
+    @Nullable
+    public MessageLatency newConnectionLatency() {
+        // a connection is written by a sender shard and completed by I/O threads, a single stripe is enough;
+        // most connections never see a latency close to the histogram range, so it grows on demand
+        return perConnection ? new MessageLatency(1, true) : null;
+    }
+
+    private static Map<String, Map<String, HistogramSummary>> getConnectionSummaries(ServerClientStore clientStore) {
+        Map<String, Map<String, HistogramSummary>> summaries = new TreeMap<>();
+        for (ServerClient client : clientStore.getLiveClients()) {
+            for (ServerClientConnection connection : client.getConnections()) {
+                MessageLatency latency = connection.getLatency();
+                if (latency != null) {
+                    summaries.put(client.getId() + "/" + connection.getSessionId(), latency.getSummary());
+                }
+            }
+        }
+        return summaries;
+    }
+}
@@ -0,0 +1,93 @@
+package io.reactive.server.metrics;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram in microseconds, recording is wait-free and allocation free.
+ * Writers are spread by thread id over striped recorders, stripes are merged on read.
+ */
+public class LatencyRecorder {
+    public static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder[] stripes;
+    private final Histogram[] recycled;
+    private final int mask;
+
+    private final Histogram accumulated;
+
+    public LatencyRecorder(int stripes) {
+        this(stripes, false);
+    }
+
+    /**
+     * @param stripes
+     * @param autoResize histograms grow up to the recorded values instead of covering an hour up front,
+     *                   it saves memory of many recorders (e.g. a recorder per connection)
+     */
+    public LatencyRecorder(int stripes, boolean autoResize) {
+        // a power of two, so a stripe is selected by a mask
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+
+        this.stripes = new Recorder[size];
+        this.recycled = new Histogram[size];
+        this.mask = size - 1;
+        this.accumulated = autoResize ? new Histogram(SIGNIFICANT_DIGITS) : newHistogram();
+
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = autoResize
+                ? new Recorder(SIGNIFICANT_DIGITS)
+                : new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        }
+    }
+
+    /**
+     * @param micros out of range values are clamped
+     */
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+        stripes[(int) Thread.currentThread().getId() & mask].recordValue(value);
+    }
+
+    /**
+     * @return all the values recorded so far, a copy
+     */
+    public synchronized Histogram getHistogram() {
+        for (int i = 0; i < stripes.length; i++) {
+            recycled[i] = stripes[i].getIntervalHistogram(recycled[i]);
+            accumulated.add(recycled[i]);
+        }
+        return accumulated.copy();
+    }
+
+    public HistogramSummary getSummary() {
+        return new HistogramSummary(getHistogram());
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    }
+}
@@ -0,0 +1,84 @@
+package io.reactive.server.metrics;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Latency of outgoing messages, in microseconds:
+ * enqueue to the client queue → dispatch to the socket → send completion.
+ * Total is from Header.created to the send completion, in milliseconds, the resolution of the producer clock.
+ */
+public class MessageLatency {
+    private final LatencyRecorder enqueueToDispatch;
+    private final LatencyRecorder dispatchToComplete;
+    private final LatencyRecorder total;
+
+    public MessageLatency(int stripes) {
+        this(stripes, false);
+    }
+
+    /**
+     * @param stripes
+     * @param autoResize see {@link LatencyRecorder#LatencyRecorder(int, boolean)}
+     */
+    public MessageLatency(int stripes, boolean autoResize) {
+        this.enqueueToDispatch = new LatencyRecorder(stripes, autoResize);
+        this.dispatchToComplete = new LatencyRecorder(stripes, autoResize);
+        this.total = new LatencyRecorder(stripes, autoResize);
+    }
+
+    public void onDispatched(long enqueueToDispatchNanos) {
+        enqueueToDispatch.record(NANOSECONDS.toMicros(enqueueToDispatchNanos));
+    }
+
+    public void onCompleted(long dispatchToCompleteNanos, long totalMillis) {
+        dispatchToComplete.record(NANOSECONDS.toMicros(dispatchToCompleteNanos));
+        total.record(totalMillis);
+    }
+
+    public LatencyRecorder getEnqueueToDispatch() {
+        return enqueueToDispatch;
+    }
+
+    public LatencyRecorder getDispatchToComplete() {
+        return dispatchToComplete;
+    }
+
+    /**
+     * @return milliseconds
+     */
+    public LatencyRecorder getTotal() {
+        return total;
+    }
+
+    public Map<String, HistogramSummary> getSummary() {
+        return ImmutableMap.of(
+            "enqueueToDispatch", enqueueToDispatch.getSummary(),
+            "dispatchToComplete", dispatchToComplete.getSummary(),
+            "totalMillis", total.getSummary()
+        );
+    }
+}
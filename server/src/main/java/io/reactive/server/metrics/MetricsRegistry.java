@@ -0,0 +1,86 @@
+package io.reactive.server.metrics;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named server metrics. Writers hold references to counters and histograms, so updates don't look up by name.
+ * Gauges and reports are evaluated only when a snapshot is taken.
+ */
+@Singleton
+public class MetricsRegistry {
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyRecorder> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<?>> reports = new ConcurrentHashMap<>();
+
+    @NotNull
+    public LongAdder counter(@NotNull String name) {
+        return counters.computeIfAbsent(name, ignored -> new LongAdder());
+    }
+
+    public void gauge(@NotNull String name, @NotNull LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return a histogram in microseconds
+     */
+    @NotNull
+    public LatencyRecorder histogram(@NotNull String name) {
+        return histograms.computeIfAbsent(name, ignored -> new LatencyRecorder(Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    /**
+     * @param report an arbitrary object serialized as is
+     */
+    public void report(@NotNull String name, @NotNull Supplier<?> report) {
+        reports.put(name, report);
+    }
+
+    public long getCounter(@NotNull String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * @return all the metrics sorted by name
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> snapshot.put(name, histogram.getSummary()));
+        reports.forEach((name, report) -> snapshot.put(name, report.get()));
+        return ImmutableMap.copyOf(snapshot);
+    }
+}
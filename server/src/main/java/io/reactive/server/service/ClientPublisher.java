@@ -0,0 +1,729 @@
+package io.reactive.server.service;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableList;
+import io.reactive.server.domain.MessageSubscriber;
+import io.reactive.server.domain.RecipientMode;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.util.ByteBudget;
+import io.reactive.server.util.EvictionListener;
+import io.reactive.server.util.EvictionPolicy;
+import io.reactive.server.util.ServerClientMessageList;
+import io.reactive.server.util.SubscriptionListener;
+import io.reactive.server.util.WebSocketSubscription;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Publishes messages of a client to its connections.
+ * <p>
+ * Every subscriber has its own queue: a {@link RecipientMode#ALL} message is put (by reference) into every queue,
+ * a {@link RecipientMode#SINGLE} one into the queue of the targeted session, so a slow connection delays
+ * and loses only its own messages. Messages published while nobody is subscribed wait in a backlog
+ * for the first subscribers.
+ * <p>
+ * Every signal but onSubscribe is emitted by {@link #drain()}, which is run by a single actor,
+ * so signals are serial (Reactive Streams §1.3) and a request from onNext schedules another drain
+ * instead of a recursive call (§3.3). The queue of a subscriber is dropped as soon as it cancels.
+ * <p>
+ * The drain serves subscribers round-robin by {@link #QUANTUM} messages, skipping the ones without demand or bytes.
+ * A drain is scheduled only for a subscriber able to send: by a producer, by a request or by a refund
+ * of the exhausted bytes (of the connection or of the whole server), so a stalled subscriber doesn't make the actor spin. A drain sends up to
+ * {@link #DRAIN_LIMIT} messages and schedules itself again, so a busy client doesn't hold the actor.
+ */
+class ClientPublisher implements Flow.Publisher<WebSocketMessage>, SubscriptionListener {
+    private static final Logger log = LoggerFactory.getLogger(ClientPublisher.class);
+
+    // messages sent to a subscriber before the next one is served
+    static final int QUANTUM = 16;
+    // messages sent by a drain before other clients of the actor are served
+    static final int DRAIN_LIMIT = 16 * QUANTUM;
+
+    private final long clientId;
+    private final Function<EvictionListener, ServerClientMessageList> queues;
+    private final Owner owner;
+    @Nullable
+    private final LongFunction<WebSocketMessage> gapMessages;
+    private final ServerClientMessageList backlog;
+
+    // immutable snapshot, swapped under the lock, so neither producers nor the drain lock or copy
+    private volatile ImmutableList<Subscribed> subscriptions = ImmutableList.of();
+    // true while a drain is pending
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean completed;
+    @Nullable
+    private volatile Throwable error;
+    // terminal signals are sent, guarded by this
+    private boolean terminated;
+    // set under the lock, so a reserved subscriber is never attached to a released publisher
+    private volatile boolean released;
+    // subscribers reserved by trySubscribe(), but not added yet, guarded by this
+    private int reserved;
+    // the last subscriber is removed while another one is reserved, guarded by this
+    private boolean releaseDeferred;
+    // the first subscriber of the next drain, rotated by the drain only
+    private int next;
+    // the same instance every time, so a publisher waits for the server bytes once
+    private final Runnable bytesWaiter = this::onBytesAvailable;
+
+    /**
+     * @param queues creates a bounded queue, which reports evictions to the given listener
+     * @param gapMessages creates a notification about dropped messages, null to not notify
+     */
+    ClientPublisher(
+        long clientId,
+        @NotNull Function<EvictionListener, ServerClientMessageList> queues,
+        @NotNull Owner owner,
+        @Nullable LongFunction<WebSocketMessage> gapMessages
+    ) {
+        this.clientId = clientId;
+        this.queues = queues;
+        this.owner = owner;
+        this.gapMessages = gapMessages;
+        this.backlog = queues.apply(owner::onEvicted);
+    }
+
+    long getClientId() {
+        return clientId;
+    }
+
+    int getSubscribers() {
+        return subscriptions.size();
+    }
+
+    boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * @return true if the caller is responsible for scheduling the drain
+     */
+    boolean trySchedule() {
+        return !scheduled.get() && scheduled.compareAndSet(false, true);
+    }
+
+    void unschedule() {
+        scheduled.set(false);
+    }
+
+    /**
+     * Subscribes with unlimited byte budgets.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super WebSocketMessage> subscriber) {
+        subscribe(subscriber, new ByteBudget(0), new ByteBudget(0));
+    }
+
+    /**
+     * @param bytes in flight of the subscriber
+     * @param outboundBytes in flight of all the subscribers
+     */
+    void subscribe(
+        Flow.Subscriber<? super WebSocketMessage> subscriber,
+        @NotNull ByteBudget bytes,
+        @NotNull ByteBudget outboundBytes
+    ) {
+        subscribe(subscriber, bytes, outboundBytes, false);
+    }
+
+    /**
+     * Subscribes, unless the publisher has been released by its owner: the owner has to create a new one then,
+     * because nobody drains a released publisher.
+     *
+     * @param bytes in flight of the subscriber
+     * @param outboundBytes in flight of all the subscribers
+     * @return false if the publisher is released, the subscriber isn't signalled
+     */
+    boolean trySubscribe(
+        Flow.Subscriber<? super WebSocketMessage> subscriber,
+        @NotNull ByteBudget bytes,
+        @NotNull ByteBudget outboundBytes
+    ) {
+        synchronized (this) {
+            if (released) {
+                return false;
+            }
+            // the publisher isn't released until the subscriber is added
+            reserved++;
+        }
+
+        subscribe(subscriber, bytes, outboundBytes, true);
+        return true;
+    }
+
+    private void subscribe(
+        Flow.Subscriber<? super WebSocketMessage> subscriber,
+        @NotNull ByteBudget bytes,
+        @NotNull ByteBudget outboundBytes,
+        boolean reservation
+    ) {
+        // §1.9
+        Objects.requireNonNull(subscriber, "Subscriber is required!");
+
+        Subscribed subscribed = new Subscribed(
+            asMessageSubscriber(subscriber), new WebSocketSubscription(bytes, outboundBytes, this));
+        subscribed.subscriber.onSubscribe(subscribed.subscription);
+
+        boolean added = false;
+        boolean release = false;
+        synchronized (this) {
+            if (!terminated && !subscribed.subscription.isCancelled()) {
+                subscriptions = ImmutableList.<Subscribed>builderWithExpectedSize(subscriptions.size() + 1)
+                    .addAll(subscriptions)
+                    .add(subscribed)
+                    .build();
+                added = true;
+                releaseDeferred = false;
+            }
+
+            if (reservation) {
+                reserved--;
+                // the release was waiting for this subscriber, which has cancelled in onSubscribe
+                if (releaseDeferred && reserved == 0 && subscriptions.isEmpty()) {
+                    releaseDeferred = false;
+                    released = true;
+                    release = true;
+                }
+            }
+        }
+
+        if (release) {
+            release(ImmutableList.of());
+        }
+
+        if (added) {
+            // the backlog is waiting for the first subscriber
+            owner.schedule(this);
+            return;
+        }
+
+        subscribed.messages.clear();
+
+        // an invalid request from onSubscribe or the publisher is already terminated
+        Throwable failure = subscribed.subscription.takeError();
+        if (failure == null && !subscribed.subscription.isCancelled()) {
+            failure = error;
+            if (failure == null) {
+                subscribed.subscriber.onComplete();
+                return;
+            }
+        }
+
+        if (failure != null) {
+            subscribed.subscriber.onError(failure);
+        }
+    }
+
+    /**
+     * Routes the message to the queues of subscribers, called by producers.
+     */
+    void publish(@NotNull WebSocketMessage message) {
+        ImmutableList<Subscribed> current = subscriptions;
+        boolean ready = route(current, message);
+        onPublished(current, ready);
+    }
+
+    void publish(@NotNull List<WebSocketMessage> messages) {
+        ImmutableList<Subscribed> current = subscriptions;
+        boolean ready = false;
+        for (int i = 0; i < messages.size(); i++) {
+            ready |= route(current, messages.get(i));
+        }
+        onPublished(current, ready);
+    }
+
+    /**
+     * Subscribers get onComplete, when the queued messages are sent.
+     */
+    void complete() {
+        completed = true;
+        owner.schedule(this);
+    }
+
+    /**
+     * Subscribers get onError as soon as possible, the queued messages are dropped.
+     */
+    void error(@NotNull Throwable throwable) {
+        if (error == null) {
+            error = throwable;
+        }
+        owner.schedule(this);
+    }
+
+    /**
+     * @return queued messages of all the subscribers and the backlog
+     */
+    int getSize() {
+        int size = backlog.getSize();
+        for (Subscribed subscribed : subscriptions) {
+            size += subscribed.messages.getSize();
+        }
+        return size;
+    }
+
+    long getBytes() {
+        long bytes = backlog.getBytes();
+        for (Subscribed subscribed : subscriptions) {
+            bytes += subscribed.messages.getBytes();
+        }
+        return bytes;
+    }
+
+    long getEvicted() {
+        long evicted = backlog.getEvicted();
+        for (Subscribed subscribed : subscriptions) {
+            evicted += subscribed.messages.getEvicted();
+        }
+        return evicted;
+    }
+
+    long getConflated() {
+        long conflated = backlog.getConflated();
+        for (Subscribed subscribed : subscriptions) {
+            conflated += subscribed.messages.getConflated();
+        }
+        return conflated;
+    }
+
+    /**
+     * Drops the oldest messages of the largest queue first, whatever the eviction policy is.
+     *
+     * @return freed bytes
+     */
+    long evictOldest(long target) {
+        long freed = 0;
+        while (freed < target) {
+            ServerClientMessageList largest = backlog;
+            for (Subscribed subscribed : subscriptions) {
+                if (subscribed.messages.getBytes() > largest.getBytes()) {
+                    largest = subscribed.messages;
+                }
+            }
+
+            long evicted = largest.evictOldest(target - freed);
+            if (evicted == 0) {
+                break;
+            }
+            freed += evicted;
+        }
+        return freed;
+    }
+
+    @Override
+    public void onRequested(WebSocketSubscription subscription) {
+        // an empty queue waits for a producer, which schedules the drain by itself
+        if (!released && (subscription.isCancelled() || completed || error != null || hasQueued(subscription))) {
+            owner.schedule(this);
+        }
+    }
+
+    /**
+     * Called by a refund, which makes the bytes of all the connections available again.
+     */
+    private void onBytesAvailable() {
+        if (!released) {
+            owner.schedule(this);
+        }
+    }
+
+    @Override
+    public void onCancelled(WebSocketSubscription subscription) {
+        remove(subscription);
+    }
+
+    /**
+     * Sends the queued messages according to the demand of each subscriber, MUST be called by a single thread at a time.
+     */
+    void drain() {
+        // from now on, a new message schedules another drain
+        unschedule();
+
+        Throwable failure = error;
+        if (failure != null) {
+            terminate(failure);
+            return;
+        }
+
+        ImmutableList<Subscribed> current = subscriptions;
+        if (!current.isEmpty() && !backlog.isEmpty()) {
+            // published before anybody has subscribed
+            WebSocketMessage message;
+            while ((message = backlog.poll()) != null) {
+                route(current, message);
+            }
+        }
+
+        int size = current.size();
+        boolean progress = false;
+        if (size > 0) {
+            // the first one of the previous drain is the last one now
+            int start = Math.floorMod(next++, size);
+            int sent = 0;
+            progress = true;
+            while (progress && sent < DRAIN_LIMIT) {
+                progress = false;
+                // indexed loop over the snapshot, no iterator on the hot path
+                for (int i = 0; i < size; i++) {
+                    Subscribed subscribed = current.get((start + i) % size);
+                    try {
+                        int drained = drain(subscribed, QUANTUM);
+                        sent += drained;
+                        progress |= drained > 0;
+                    } catch (RuntimeException e) {
+                        // §2.13, the subscriber is broken, the others are served anyway
+                        log.error("Subscriber of the client [{}] has failed", clientId, e);
+                        subscribed.subscription.cancel();
+                    }
+                }
+            }
+        }
+
+        if (completed && getSize() == 0) {
+            terminate(null);
+        } else if (progress) {
+            // the limit is reached, the rest goes after the other clients of the actor
+            owner.schedule(this);
+        }
+    }
+
+    /**
+     * @return number of sent messages, up to the quantum
+     */
+    private int drain(Subscribed subscribed, int quantum) {
+        MessageSubscriber subscriber = subscribed.subscriber;
+        WebSocketSubscription subscription = subscribed.subscription;
+        ServerClientMessageList messages = subscribed.messages;
+
+        Throwable invalid = subscription.takeError();
+        if (invalid != null) {
+            remove(subscription);
+            subscriber.onError(invalid);
+            return 0;
+        }
+
+        if (subscription.isCancelled()) {
+            return 0;
+        }
+
+        // the subscriber is told first how many messages it has lost
+        long gap = gapMessages != null ? messages.takeGap() : 0;
+        int gapFrames = gap > 0 ? 1 : 0;
+        int queued = Math.min(messages.getSize() + gapFrames, quantum);
+        boolean gapSent = false;
+        int sent = 0;
+
+        if (queued > 0 && !subscription.hasBytes()) {
+            // a refund of the bytes in flight wakes it up, the demand isn't touched
+            subscription.awaitOutboundBytes(bytesWaiter);
+            owner.onBytesExhausted();
+        } else if (queued > 0 && !subscription.getDemand().isFulfilled()) {
+            // claim the demand for the whole batch by a single CAS
+            long claimed = subscription.getDemand().decrease(queued);
+            if (gapFrames > 0 && claimed > 0) {
+                subscriber.onNext(gapMessages.apply(gap), System.nanoTime());
+                gapSent = true;
+                sent++;
+            }
+            sent += messages.drainWithEnqueueTime(subscriber::onNext, (int) claimed - sent, subscription::hasBytes);
+
+            if (sent < claimed && !subscription.isCancelled()) {
+                // evicted by a producer meanwhile or out of bytes, give the rest back
+                subscription.getDemand().restore(claimed - sent);
+            }
+
+            if (claimed < queued) {
+                // a request wakes it up
+                subscriber.onDemandIsFullFilled();
+                owner.onDemandExhausted();
+            }
+        }
+
+        if (gapSent) {
+            owner.onGap();
+        } else {
+            messages.restoreGap(gap);
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace(
+                "Message left: [{}], demand: [{}]",
+                messages.getSize(),
+                subscription.getDemand().current()
+            );
+        }
+        return sent;
+    }
+
+    /**
+     * @return true if a subscriber, which got the message, has demand
+     */
+    private boolean route(ImmutableList<Subscribed> current, WebSocketMessage message) {
+        if (current.isEmpty()) {
+            backlog.add(message);
+            return false;
+        }
+
+        if (message.getMode() == RecipientMode.SINGLE) {
+            Subscribed target = getTarget(current, message.getSessionId());
+            if (target == null) {
+                log.debug("Session [{}] of the client [{}] is closed, the message is dropped", message.getSessionId(), clientId);
+                return false;
+            }
+            target.messages.add(message);
+            return target.isReady();
+        }
+
+        // the same instance for all, the payload is shared
+        boolean ready = false;
+        for (int i = 0; i < current.size(); i++) {
+            Subscribed subscribed = current.get(i);
+            subscribed.messages.add(message);
+            ready |= subscribed.isReady();
+        }
+        return ready;
+    }
+
+    private boolean hasQueued(WebSocketSubscription subscription) {
+        ImmutableList<Subscribed> current = subscriptions;
+        for (int i = 0; i < current.size(); i++) {
+            Subscribed subscribed = current.get(i);
+            if (subscribed.subscription == subscription) {
+                return !subscribed.messages.isEmpty() || subscribed.messages.hasGap();
+            }
+        }
+        return !backlog.isEmpty();
+    }
+
+    /**
+     * @param sessionId null for any session, then the least loaded one is taken
+     */
+    @Nullable
+    private Subscribed getTarget(ImmutableList<Subscribed> current, @Nullable String sessionId) {
+        Subscribed target = null;
+        for (int i = 0; i < current.size(); i++) {
+            Subscribed subscribed = current.get(i);
+            if (sessionId != null) {
+                if (sessionId.equals(subscribed.subscriber.getSessionId())) {
+                    return subscribed;
+                }
+            } else if (target == null || subscribed.messages.getSize() < target.messages.getSize()) {
+                target = subscribed;
+            }
+        }
+        return target;
+    }
+
+    private void onPublished(ImmutableList<Subscribed> current, boolean ready) {
+        if (released) {
+            // nobody is going to drain it
+            clear(current);
+        } else if (ready) {
+            owner.schedule(this);
+        }
+    }
+
+    /**
+     * Called by producers, when a queue drops or conflates messages.
+     * Under {@link EvictionPolicy#DISCONNECT} the subscriber gets onError, so it closes its session.
+     */
+    private void onEvicted(Subscribed subscribed, EvictionPolicy policy, int dropped, int conflated) {
+        owner.onEvicted(policy, dropped, conflated);
+
+        if (policy == EvictionPolicy.DISCONNECT && dropped > 0 && !subscribed.subscription.isCancelled()) {
+            log.warn("Subscriber of the client [{}] is too slow, disconnecting", clientId);
+
+            owner.onDisconnected();
+            subscribed.subscription.fail(new IllegalStateException("Slow consumer"));
+        }
+    }
+
+    /**
+     * Signals onError (if failure isn't null) or onComplete to all the subscribers, exactly once.
+     */
+    private void terminate(@Nullable Throwable failure) {
+        ImmutableList<Subscribed> current;
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            released = true;
+            current = subscriptions;
+            subscriptions = ImmutableList.of();
+        }
+
+        release(current);
+
+        for (Subscribed subscribed : current) {
+            if (subscribed.subscription.isCancelled()) {
+                continue;
+            }
+
+            try {
+                if (failure != null) {
+                    subscribed.subscriber.onError(failure);
+                } else {
+                    subscribed.subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {
+                log.error("Subscriber of the client [{}] has failed", clientId, e);
+            }
+        }
+    }
+
+    private void remove(WebSocketSubscription subscription) {
+        Subscribed removed = null;
+        boolean last = false;
+        synchronized (this) {
+            ImmutableList<Subscribed> current = subscriptions;
+            ImmutableList.Builder<Subscribed> builder = ImmutableList.builderWithExpectedSize(current.size());
+            for (Subscribed existing : current) {
+                if (existing.subscription == subscription) {
+                    removed = existing;
+                } else {
+                    builder.add(existing);
+                }
+            }
+
+            if (removed != null) {
+                subscriptions = builder.build();
+                if (subscriptions.isEmpty() && !released) {
+                    // a reserved subscriber is going to be added
+                    last = reserved == 0;
+                    released = last;
+                    releaseDeferred = !last;
+                }
+            }
+        }
+
+        if (removed == null) {
+            return;
+        }
+
+        // the queue is dropped at once, along with the subscriber reference (§3.13)
+        removed.messages.clear();
+        if (last) {
+            release(ImmutableList.of());
+        }
+    }
+
+    /**
+     * Called after released is set under the lock.
+     */
+    private void release(ImmutableList<Subscribed> current) {
+        owner.release(this);
+        clear(current);
+    }
+
+    private void clear(ImmutableList<Subscribed> current) {
+        backlog.clear();
+        for (int i = 0; i < current.size(); i++) {
+            current.get(i).messages.clear();
+        }
+    }
+
+    private static MessageSubscriber asMessageSubscriber(Flow.Subscriber<? super WebSocketMessage> subscriber) {
+        if (subscriber instanceof MessageSubscriber) {
+            return (MessageSubscriber) subscriber;
+        }
+
+        return new MessageSubscriber() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(WebSocketMessage item) {
+                subscriber.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        };
+    }
+
+    /**
+     * Runs publishers and counts their events.
+     */
+    interface Owner {
+        /**
+         * Makes the publisher drained (unless a drain is pending already).
+         */
+        void schedule(ClientPublisher publisher);
+
+        /**
+         * The publisher is terminated or nobody is subscribed to it anymore.
+         */
+        void release(ClientPublisher publisher);
+
+        default void onEvicted(EvictionPolicy policy, int dropped, int conflated) {
+        }
+
+        default void onDisconnected() {
+        }
+
+        default void onGap() {
+        }
+
+        default void onDemandExhausted() {
+        }
+
+        default void onBytesExhausted() {
+        }
+    }
+
+    private class Subscribed {
+        private final MessageSubscriber subscriber;
+        private final WebSocketSubscription subscription;
+        private final ServerClientMessageList messages;
+
+        private Subscribed(MessageSubscriber subscriber, WebSocketSubscription subscription) {
+            this.subscriber = subscriber;
+            this.subscription = subscription;
+            this.messages = queues.apply((policy, dropped, conflated) -> onEvicted(this, policy, dropped, conflated));
+        }
+
+        /**
+         * @return true if the subscriber is able to send a message now
+         */
+        private boolean isReady() {
+            return !subscription.getDemand().isFulfilled() && subscription.hasBytes();
+        }
+    }
+}
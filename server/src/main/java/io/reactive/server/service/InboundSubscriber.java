@@ -0,0 +1,175 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.Message;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.WebSocketUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broadcasts messages of a single producer connection to all the clients.
+ * The producer is given credits (see {@link io.reactive.server.domain.MessageType#CREDIT}) by batches
+ * as its messages are handed over to the sender, but only while the sender isn't overloaded,
+ * so a producer following the credits never outpaces the consumers.
+ * The container thread is never blocked: while the sender is overloaded, messages of a producer following
+ * the credits wait in order (no more than its credits), messages of a producer without credits are shed.
+ * Messages are delivered by the container one by one.
+ */
+public class InboundSubscriber implements Flow.Subscriber<Message> {
+    private static final Logger log = LoggerFactory.getLogger(InboundSubscriber.class);
+
+    @Inject
+    private ServerClientStore clientStore;
+
+    @Inject
+    private MessageSender messageSender;
+
+    @Inject
+    private ServerConfiguration serverConfiguration;
+
+    @Inject
+    private WebSocketUtils webSocketUtils;
+
+    @Inject
+    private MemoryAccountant memoryAccountant;
+
+    private final LongAdder shed;
+
+    private Flow.Subscription subscription;
+    private int creditBatch;
+    // handled since the last credits
+    private int handled;
+
+    // messages waiting for the sender capacity, drained by a single thread at a time
+    private final Queue<WebSocketMessage> deferred = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drains = new AtomicInteger();
+
+    @Inject
+    public InboundSubscriber(MetricsRegistry metricsRegistry) {
+        this.shed = metricsRegistry.counter("memory.producer.shed");
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+
+        int credits = serverConfiguration.getProducerCredits();
+        if (credits > 0) {
+            creditBatch = Math.max(1, credits / 2);
+            subscription.request(credits);
+        }
+    }
+
+    @Override
+    public void onNext(Message message) {
+        if (log.isTraceEnabled()) {
+            log.trace("Sending [{}] messages", serverConfiguration.getMessageMultiplier());
+        }
+
+        // encode once, all recipients share the same payload
+        WebSocketMessage webSocketMessage = webSocketUtils.getMessage(message);
+
+        if (deferred.isEmpty() && !memoryAccountant.isOverloaded()) {
+            broadcast(webSocketMessage);
+        } else if (creditBatch > 0) {
+            deferred.add(webSocketMessage);
+            if (drains.getAndIncrement() == 0) {
+                memoryAccountant.whenCapacity(this::drainDeferred);
+            }
+        } else {
+            // nothing bounds a producer without credits
+            onShed(serverConfiguration.getMessageMultiplier());
+        }
+
+        if (creditBatch > 0 && ++handled == creditBatch) {
+            handled = 0;
+            memoryAccountant.whenCapacity(() -> subscription.request(creditBatch));
+        }
+    }
+
+    /**
+     * The copies aren't waited for, the rest is shed as soon as the sender is overloaded.
+     */
+    private void broadcast(WebSocketMessage message) {
+        int multiplier = serverConfiguration.getMessageMultiplier();
+        int sent = 0;
+        while (sent < multiplier && (sent == 0 || memoryAccountant.tryAcquireCapacity())) {
+            try {
+                messageSender.broadcast(clientStore.getLiveClients(), message);
+            } catch (Exception e) {
+                log.error("Can't send a message", e);
+            }
+            sent++;
+        }
+
+        if (sent < multiplier) {
+            onShed(multiplier - sent);
+        }
+    }
+
+    private void drainDeferred() {
+        int missed = drains.get();
+        for (;;) {
+            WebSocketMessage message;
+            while ((message = deferred.peek()) != null) {
+                if (memoryAccountant.isOverloaded()) {
+                    // the drain stays claimed, so the producer doesn't schedule another one
+                    memoryAccountant.whenCapacity(this::drainDeferred);
+                    return;
+                }
+                broadcast(message);
+                // removed once sent, so the producer doesn't overtake it
+                deferred.poll();
+            }
+
+            missed = drains.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void onShed(int messages) {
+        log.debug("Sender is overloaded, [{}] messages of the producer are shed", messages);
+        shed.add(messages);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.error("Producer connection failed", throwable);
+        subscription.cancel();
+    }
+
+    @Override
+    public void onComplete() {
+        subscription.cancel();
+    }
+}
@@ -0,0 +1,189 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.configuration.ActorScope;
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.ByteBudget;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bytes held by the sender: queued in all the client queues and in flight of all the connections.
+ * Producers are slowed down above the high watermark, until the memory goes below the low watermark.
+ */
+@Singleton
+public class MemoryAccountant {
+    private static final Logger log = LoggerFactory.getLogger(MemoryAccountant.class);
+
+    private static final long CAPACITY_CHECK_MILLIS = 1;
+
+    private final ByteBudget queued = new ByteBudget(0);
+    private final OutboundBudget inFlight;
+
+    // 0 means disabled
+    private final long highWatermark;
+    private final long lowWatermark;
+
+    private final LongAdder throttled;
+
+    private volatile boolean overloaded;
+
+    // tasks waiting for the memory to go below the low watermark
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean checkScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService actorExecutor;
+
+    /**
+     * @param scheduler triggers the checks of waiting tasks
+     * @param actorExecutor runs the waiting tasks
+     */
+    @Inject
+    public MemoryAccountant(
+        ServerConfiguration serverConfiguration,
+        OutboundBudget inFlight,
+        MetricsRegistry metricsRegistry,
+        @ActorScope ScheduledExecutorService scheduler,
+        @ActorScope ExecutorService actorExecutor
+    ) {
+        this.inFlight = inFlight;
+        this.scheduler = scheduler;
+        this.actorExecutor = actorExecutor;
+        this.highWatermark = serverConfiguration.getMemoryHighWatermark();
+        this.lowWatermark = Math.min(serverConfiguration.getMemoryLowWatermark(), highWatermark);
+
+        this.throttled = metricsRegistry.counter("memory.producer.throttled");
+        metricsRegistry.gauge("memory.queued.bytes", queued::getUsed);
+        metricsRegistry.gauge("memory.used.bytes", this::getUsed);
+        metricsRegistry.gauge("memory.overloaded", () -> overloaded ? 1 : 0);
+    }
+
+    /**
+     * @return bytes of queued messages, shared by all the client queues
+     */
+    public ByteBudget getQueued() {
+        return queued;
+    }
+
+    public long getUsed() {
+        return queued.getUsed() + inFlight.getUsed();
+    }
+
+    /**
+     * Becomes true above the high watermark and false below the low one.
+     */
+    public boolean isOverloaded() {
+        if (highWatermark <= 0) {
+            return false;
+        }
+
+        long used = getUsed();
+        if (overloaded) {
+            if (used < lowWatermark) {
+                overloaded = false;
+            }
+        } else if (used > highWatermark) {
+            overloaded = true;
+        }
+        return overloaded;
+    }
+
+    /**
+     * @return bytes to free to get below the low watermark
+     */
+    public long getExcess() {
+        // the overload ends strictly below the low watermark
+        return isOverloaded() ? Math.max(0, getUsed() - lowWatermark + 1) : 0;
+    }
+
+    /**
+     * Runs the task right away if the sender isn't overloaded, or later, when the memory goes below the low watermark.
+     */
+    public void whenCapacity(@NotNull Runnable task) {
+        if (!isOverloaded()) {
+            task.run();
+            return;
+        }
+
+        throttled.increment();
+        waiting.add(task);
+        scheduleCheck();
+    }
+
+    /**
+     * Doesn't block, for producers which might skip their work.
+     *
+     * @return false if the sender is overloaded
+     */
+    public boolean tryAcquireCapacity() {
+        if (isOverloaded()) {
+            throttled.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void scheduleCheck() {
+        if (checkScheduled.compareAndSet(false, true)) {
+            // the timer thread only hands the check off, so a slow task doesn't delay other timers
+            scheduler.schedule(
+                () -> actorExecutor.execute(this::runWaiting),
+                CAPACITY_CHECK_MILLIS,
+                TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    private void runWaiting() {
+        checkScheduled.set(false);
+
+        if (isOverloaded()) {
+            scheduleCheck();
+            return;
+        }
+
+        Runnable task;
+        while ((task = waiting.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Waiting task failed", e);
+            }
+        }
+
+        // added meanwhile
+        if (!waiting.isEmpty()) {
+            scheduleCheck();
+        }
+    }
+}
@@ -21,13 +21,42 @@ package io.reactive.server.service;
 
 import com.google.inject.ImplementedBy;
 import io.reactive.server.domain.Message;
+import io.reactive.server.domain.ServerClient;
+import io.reactive.server.domain.WebSocketMessage;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
+import java.util.concurrent.Flow;
 
 @ImplementedBy(MessageSenderImpl.class)
 public interface MessageSender {
     void addMessage(long clientId, @NotNull Message message);
 
+    /**
+     * Sends the message to a single session of the client, it's dropped if the session is closed.
+     */
+    void addMessage(long clientId, @NotNull String sessionId, @NotNull Message message);
+
     void addMessages(long clientId, @NotNull List<Message> messages);
+
+    /**
+     * Encodes the message once and shares it between all recipients.
+     */
+    void broadcast(@NotNull Iterable<ServerClient> recipients, @NotNull Message message);
+
+    /**
+     * @param message already encoded, MUST NOT be modified after the call
+     */
+    void broadcast(@NotNull Iterable<ServerClient> recipients, @NotNull WebSocketMessage message);
+
+    /**
+     * @param messages already encoded, MUST NOT be modified after the call
+     */
+    void broadcast(@NotNull Iterable<ServerClient> recipients, @NotNull List<WebSocketMessage> messages);
+
+    /**
+     * Subscribes to the messages of a client, every subscriber has its own queue.
+     * The subscriber gets onError if it is too slow, its queue is dropped when it cancels.
+     */
+    void subscribe(long clientId, @NotNull Flow.Subscriber<? super WebSocketMessage> subscriber);
 }
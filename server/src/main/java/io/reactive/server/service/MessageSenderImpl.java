@@ -19,139 +19,240 @@ package io.reactive.server.service;
  * limitations under the License.
  */
 
-import com.google.common.base.Preconditions;
-import com.google.common.collect.EvictingQueue;
 import io.reactive.server.configuration.ActorScope;
 import io.reactive.server.configuration.ServerConfiguration;
 import io.reactive.server.domain.Message;
+import io.reactive.server.domain.RecipientMode;
 import io.reactive.server.domain.ServerClient;
-import io.reactive.server.domain.ServerClientConnection;
 import io.reactive.server.domain.WebSocketMessage;
-import io.reactive.server.util.*;
+import io.reactive.server.metrics.ClientQueueStats;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.ByteBudget;
+import io.reactive.server.util.GuavaCollectors;
+import io.reactive.server.util.WebSocketUtils;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.PriorityQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Routes messages to {@link MessageSenderShard} actors, a client is always served by the same shard.
+ */
 @Singleton
-public class MessageSenderImpl extends Actor<MessageSenderImpl.BaseMessage> implements MessageSender {
+public class MessageSenderImpl implements MessageSender {
     private static final Logger log = LoggerFactory.getLogger(MessageSenderImpl.class);
 
-    private final ConcurrentMap<Long, ServerClientMessageList> clientsToMessages = new ConcurrentHashMap<>();
+    private static final int SLOWEST_CLIENTS = 10;
+    // the largest queues taken by a single shedding pass
+    private static final int SHED_QUEUES = 64;
+    private static final long SHED_RETRY_MILLIS = 10;
+
+    private final MessageSenderShard[] shards;
 
-    private final ServerClientStore serverClientStore;
     private final WebSocketUtils webSocketUtils;
     private final ServerConfiguration serverConfiguration;
+    private final MemoryAccountant memoryAccountant;
+    private final OutboundBudget outboundBudget;
+    private final ScheduledExecutorService scheduler;
+
+    // true while a shedding pass is pending on the scheduler, producers only check the flag
+    private final AtomicBoolean shedding = new AtomicBoolean();
+    private final LongAdder shedBytes;
 
     @Inject
     public MessageSenderImpl(
         @ActorScope ExecutorService actorExecutor,
-        ServerClientStore serverClientStore,
+        @ActorScope ScheduledExecutorService scheduler,
         WebSocketUtils webSocketUtils,
-        ServerConfiguration serverConfiguration
+        ServerConfiguration serverConfiguration,
+        MemoryAccountant memoryAccountant,
+        OutboundBudget outboundBudget,
+        MetricsRegistry metricsRegistry
     ) {
-        super(actorExecutor);
-        this.serverClientStore = serverClientStore;
         this.webSocketUtils = webSocketUtils;
         this.serverConfiguration = serverConfiguration;
+        this.memoryAccountant = memoryAccountant;
+        this.outboundBudget = outboundBudget;
+        this.scheduler = scheduler;
+
+        int shardsCount = serverConfiguration.getSenderShards() > 0
+            ? serverConfiguration.getSenderShards()
+            : Runtime.getRuntime().availableProcessors();
+
+        log.info("Message sender shards: [{}]", shardsCount);
+
+        this.shards = new MessageSenderShard[shardsCount];
+        for (int i = 0; i < shardsCount; i++) {
+            shards[i] = new MessageSenderShard(
+                i,
+                actorExecutor,
+                serverConfiguration,
+                webSocketUtils,
+                memoryAccountant.getQueued(),
+                metricsRegistry
+            );
+        }
+
+        this.shedBytes = metricsRegistry.counter("memory.evicted.bytes");
+        metricsRegistry.report("sender.slowest.clients", this::getSlowestClients);
     }
 
     @Override
     public void addMessage(long clientId, @NotNull Message message) {
-        ServerClientMessageList messages = clientsToMessages.computeIfAbsent(
-            clientId, client -> new ServerClientMessageList(EvictingQueue.create(serverConfiguration.getMaxMessages())));
+        shedIfOverloaded();
+        getShard(clientId).addMessage(clientId, webSocketUtils.getMessage(message));
+    }
 
-        messages.add(webSocketUtils.getMessage(message));
-        if (getQueueSize() < 10000) {
-            enqueue(new Send(clientId));
-        }
+    @Override
+    public void addMessage(long clientId, @NotNull String sessionId, @NotNull Message message) {
+        WebSocketMessage webSocketMessage = webSocketUtils.getMessage(message);
+        webSocketMessage.setMode(RecipientMode.SINGLE);
+        webSocketMessage.setSessionId(sessionId);
+
+        shedIfOverloaded();
+        getShard(clientId).addMessage(clientId, webSocketMessage);
     }
 
     @Override
     public void addMessages(long clientId, @NotNull List<Message> messages) {
-        ServerClientMessageList userMessages = clientsToMessages.computeIfAbsent(
-            clientId, client -> new ServerClientMessageList(EvictingQueue.create(serverConfiguration.getMaxMessages())));
-
         List<WebSocketMessage> webSocketMessages = messages.stream().map(webSocketUtils::getMessage)
             .collect(GuavaCollectors.toImmutableList());
 
-        userMessages.add(webSocketMessages);
+        shedIfOverloaded();
+        getShard(clientId).addMessages(clientId, webSocketMessages);
+    }
 
-        enqueue(new Send(clientId));
+    @Override
+    public void broadcast(@NotNull Iterable<ServerClient> recipients, @NotNull Message message) {
+        broadcast(recipients, webSocketUtils.getMessage(message));
     }
 
     @Override
-    protected void dispatch(BaseMessage message) {
-        log.trace("Handle message [{}]", message);
+    public void broadcast(@NotNull Iterable<ServerClient> recipients, @NotNull WebSocketMessage message) {
+        shedIfOverloaded();
+        for (ServerClient recipient : recipients) {
+            getShard(recipient.getId()).addMessage(recipient.getId(), message);
+        }
+    }
 
-        if (message instanceof Send) {
-            onSend((Send) message);
+    @Override
+    public void broadcast(@NotNull Iterable<ServerClient> recipients, @NotNull List<WebSocketMessage> messages) {
+        shedIfOverloaded();
+        for (ServerClient recipient : recipients) {
+            getShard(recipient.getId()).addMessages(recipient.getId(), messages);
         }
     }
 
-    private void onSend(Send message) {
-        try {
-            ServerClientMessageList messages = clientsToMessages.get(message.clientId);
-            ServerClient client = serverClientStore.getClient(message.clientId);
-
-            if (client != null && messages != null) {
-                //log.info("Handle onSend message for client [{}]", client);
-
-                for (ServerClientConnection clientConnection : client.getConnections()) {
-                    WebSocketSubscription subscription = clientConnection.getSubscription();
-                    Preconditions.checkArgument(subscription != null, "Subscription is required!");
-
-                    if (!subscription.getDemand().isFulfilled()) {
-                        Iterator<WebSocketMessage> iterator = messages.iterator();
-                        while (iterator.hasNext()) {
-                            if (subscription.getDemand().decrease(1) > 0) {
-                                clientConnection.onNext(iterator.next());
-                            } else {
-                                clientConnection.onDemandIsFullFilled();
-                                break;
-                            }
-                        }
-                    }
+    @Override
+    public void subscribe(long clientId, @NotNull Flow.Subscriber<? super WebSocketMessage> subscriber) {
+        getShard(clientId).subscribe(
+            clientId, subscriber, new ByteBudget(serverConfiguration.getMaxBytesInFlight()), outboundBudget);
+    }
 
-                    if (messages.getSize() > 0) {
-                        if (log.isTraceEnabled()) {
-                            log.trace(
-                                "Message left: [{}], discarded: [{}], is full filled: [{}]",
-                                messages.getSize(),
-                                clientConnection.getDemandIsFullFilledEvents(),
-                                subscription.getDemand().isFulfilled()
-                            );
-                        }
-                        enqueue(new Send(message.clientId));
-                    }
+    /**
+     * @return clients with the deepest queues, the deepest first
+     */
+    List<ClientQueueStats> getSlowestClients() {
+        Comparator<ClientQueueStats> byQueued = Comparator.comparingInt(ClientQueueStats::getQueued);
+        PriorityQueue<ClientQueueStats> slowest = new PriorityQueue<>(SLOWEST_CLIENTS + 1, byQueued);
+
+        for (MessageSenderShard shard : shards) {
+            shard.collectQueues(stats -> {
+                slowest.add(stats);
+                if (slowest.size() > SLOWEST_CLIENTS) {
+                    slowest.poll();
                 }
-            }
-        } catch (Exception e) {
-            log.error("Error happens, while sending a message", e);
-            terminate();
+            });
         }
+
+        return slowest.stream()
+            .sorted(byQueued.reversed())
+            .collect(GuavaCollectors.toImmutableList());
     }
 
-    private void terminate() {
-        log.error("Can't continue sending messages");
-        stop();
+    /**
+     * Schedules a shedding pass if the sender is overloaded, called by producers.
+     * Only the first producer above the high watermark schedules it, the rest just check a flag.
+     */
+    void shedIfOverloaded() {
+        if (memoryAccountant.isOverloaded() && shedding.compareAndSet(false, true)) {
+            scheduler.execute(this::shed);
+        }
     }
 
-    abstract static class BaseMessage {
+    /**
+     * Evicts the oldest messages of the largest queues, until the memory is below the low watermark.
+     * Every queue gives up to a half of its bytes, the largest ones first. Runs on the scheduler
+     * and repeats after a pause while the sender is still overloaded.
+     */
+    void shed() {
+        long freed = 0;
+        try {
+            long excess = memoryAccountant.getExcess();
+            if (excess > 0) {
+                List<ClientQueueStats> queues = getLargestQueues(SHED_QUEUES);
+                for (int i = 0; i < queues.size() && freed < excess; i++) {
+                    ClientQueueStats queue = queues.get(i);
+                    long target = Math.min(excess - freed, Math.max(1, queue.getBytes() / 2));
+                    freed += getShard(queue.getClientId()).evictOldest(queue.getClientId(), target);
+                }
+                shedBytes.add(freed);
+                log.debug("The sender is overloaded, [{}] bytes of the largest queues are evicted", freed);
+            }
+        } catch (Exception e) {
+            log.error("Can't shed the sender memory", e);
+        } finally {
+            // at most one pass per pause, however many producers are adding meanwhile
+            if (memoryAccountant.isOverloaded()) {
+                scheduler.schedule(this::shed, SHED_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } else {
+                shedding.set(false);
+            }
+        }
     }
 
-    private static class Send extends BaseMessage {
-        private final long clientId;
+    /**
+     * @return up to the limit of the queues with the most bytes, the largest first
+     */
+    private List<ClientQueueStats> getLargestQueues(int limit) {
+        Comparator<ClientQueueStats> byBytes = Comparator.comparingLong(ClientQueueStats::getBytes);
+        PriorityQueue<ClientQueueStats> largest = new PriorityQueue<>(limit + 1, byBytes);
 
-        private Send(long clientId) {
-            this.clientId = clientId;
+        for (MessageSenderShard shard : shards) {
+            shard.collectQueues(stats -> {
+                if (stats.getBytes() > 0) {
+                    largest.add(stats);
+                    if (largest.size() > limit) {
+                        largest.poll();
+                    }
+                }
+            });
         }
+
+        List<ClientQueueStats> queues = new ArrayList<>(largest);
+        queues.sort(byBytes.reversed());
+        return queues;
+    }
+
+    private MessageSenderShard getShard(long clientId) {
+        return shards[getShardIndex(clientId)];
+    }
+
+    int getShardIndex(long clientId) {
+        // sequential ids must not end up in the same shard
+        int hash = (int) ((clientId * 0x9E3779B97F4A7C15L) >>> 32);
+        return Math.floorMod(hash, shards.length);
     }
 }
@@ -0,0 +1,291 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.metrics.ClientQueueStats;
+import io.reactive.server.metrics.LatencyRecorder;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.Actor;
+import io.reactive.server.util.ByteBudget;
+import io.reactive.server.util.EvictionPolicy;
+import io.reactive.server.util.ServerClientMessageList;
+import io.reactive.server.util.WebSocketUtils;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Sends messages to a partition of clients. Each shard is an independent actor with its own mailbox,
+ * so shards are running in parallel on the actor executor.
+ * Every client has a {@link ClientPublisher} with a queue per connection, which is drained by the shard only.
+ */
+class MessageSenderShard extends Actor<MessageSenderShard.BaseMessage> implements ClientPublisher.Owner {
+    private static final Logger log = LoggerFactory.getLogger(MessageSenderShard.class);
+
+    private final ConcurrentMap<Long, ClientPublisher> publishers = new ConcurrentHashMap<>();
+    // scheduled publishers whose Send was rejected by the full mailbox, a publisher is here once at most
+    private final Queue<ClientPublisher> overflow = new ConcurrentLinkedQueue<>();
+
+    private final int id;
+    private final ServerConfiguration serverConfiguration;
+    private final WebSocketUtils webSocketUtils;
+    private final ByteBudget queuedBytes;
+
+    private final LongAdder dispatched;
+    private final LongAdder rejected;
+    private final LongAdder evicted;
+    private final LongAdder conflated;
+    private final LongAdder disconnected;
+    private final LongAdder gaps;
+    private final LongAdder demandExhausted;
+    private final LongAdder bytesExhausted;
+    private final LatencyRecorder timeInMailbox;
+    private final LatencyRecorder runMessages;
+    private final LatencyRecorder runTime;
+    private final LongAdder yields;
+
+    MessageSenderShard(
+        int id,
+        ExecutorService actorExecutor,
+        ServerConfiguration serverConfiguration,
+        WebSocketUtils webSocketUtils,
+        ByteBudget queuedBytes,
+        MetricsRegistry metricsRegistry
+    ) {
+        super(
+            actorExecutor,
+            serverConfiguration.getMailboxType().create(serverConfiguration.getMailboxCapacity()),
+            serverConfiguration.getActorThroughput()
+        );
+        this.id = id;
+        this.serverConfiguration = serverConfiguration;
+        this.webSocketUtils = webSocketUtils;
+        this.queuedBytes = queuedBytes;
+
+        String prefix = "sender.shard." + id;
+        this.dispatched = metricsRegistry.counter(prefix + ".dispatched");
+        metricsRegistry.gauge(prefix + ".mailbox.depth", this::getQueueSize);
+        metricsRegistry.gauge(prefix + ".clients.queued", this::getQueuedMessages);
+        metricsRegistry.gauge(prefix + ".mailbox.overflow", overflow::size);
+
+        // shared by all the shards
+        this.rejected = metricsRegistry.counter("sender.mailbox.rejected");
+        this.evicted = metricsRegistry.counter("sender.evicted");
+        this.conflated = metricsRegistry.counter("sender.conflated");
+        this.disconnected = metricsRegistry.counter("sender.disconnected");
+        this.gaps = metricsRegistry.counter("sender.gap.notifications");
+        this.demandExhausted = metricsRegistry.counter("sender.demand.exhausted");
+        this.bytesExhausted = metricsRegistry.counter("sender.bytes.exhausted");
+        this.timeInMailbox = metricsRegistry.histogram("sender.mailbox.time");
+        // a number of messages, not microseconds
+        this.runMessages = metricsRegistry.histogram("sender.actor.run.messages");
+        this.runTime = metricsRegistry.histogram("sender.actor.run.time");
+        this.yields = metricsRegistry.counter("sender.actor.yields");
+    }
+
+    void addMessage(long clientId, @NotNull WebSocketMessage message) {
+        publishers.computeIfAbsent(clientId, this::newPublisher).publish(message);
+    }
+
+    void addMessages(long clientId, @NotNull List<WebSocketMessage> messages) {
+        publishers.computeIfAbsent(clientId, this::newPublisher).publish(messages);
+    }
+
+    /**
+     * @param bytes in flight of the subscriber
+     * @param outboundBytes in flight of all the subscribers
+     */
+    void subscribe(
+        long clientId,
+        @NotNull Flow.Subscriber<? super WebSocketMessage> subscriber,
+        @NotNull ByteBudget bytes,
+        @NotNull ByteBudget outboundBytes
+    ) {
+        ClientPublisher publisher = publishers.computeIfAbsent(clientId, this::newPublisher);
+        while (!publisher.trySubscribe(subscriber, bytes, outboundBytes)) {
+            // its last subscriber has gone meanwhile, the releasing thread might not have removed it yet
+            publishers.remove(clientId, publisher);
+            publisher = publishers.computeIfAbsent(clientId, this::newPublisher);
+        }
+    }
+
+    /**
+     * @param consumer gets every client queue of the shard
+     */
+    void collectQueues(@NotNull Consumer<ClientQueueStats> consumer) {
+        publishers.forEach((clientId, publisher) -> consumer.accept(new ClientQueueStats(
+            clientId, publisher.getSize(), publisher.getBytes(), publisher.getEvicted(), publisher.getConflated())));
+    }
+
+    /**
+     * Drops the oldest messages of a client to free memory, called by a producer.
+     *
+     * @return freed bytes
+     */
+    long evictOldest(long clientId, long bytes) {
+        ClientPublisher publisher = publishers.get(clientId);
+        return publisher != null ? publisher.evictOldest(bytes) : 0;
+    }
+
+    @Override
+    protected void dispatch(BaseMessage message) {
+        log.trace("Handle message [{}]", message);
+
+        dispatched.increment();
+        timeInMailbox.record(NANOSECONDS.toMicros(System.nanoTime() - message.enqueuedNanos));
+
+        if (message instanceof Send) {
+            onSend((Send) message);
+        }
+    }
+
+    /**
+     * Moves rejected Sends to the mailbox, as far as the run has freed it.
+     */
+    @Override
+    protected int process() {
+        int dispatched = super.process();
+        ClientPublisher publisher;
+        while ((publisher = overflow.peek()) != null && enqueue(new Send(publisher))) {
+            overflow.poll();
+        }
+        return dispatched;
+    }
+
+    @Override
+    protected boolean hasPending() {
+        return super.hasPending() || !overflow.isEmpty();
+    }
+
+    @Override
+    protected void onRun(int dispatched, long nanos, boolean yielded) {
+        runMessages.record(dispatched);
+        runTime.record(NANOSECONDS.toMicros(nanos));
+        if (yielded) {
+            yields.increment();
+        }
+    }
+
+    private void onSend(Send message) {
+        try {
+            message.publisher.drain();
+        } catch (Exception e) {
+            log.error("Error happens, while sending a message", e);
+            terminate();
+        }
+    }
+
+    /**
+     * Enqueues Send unless there is one pending for the client already.
+     */
+    @Override
+    public void schedule(ClientPublisher publisher) {
+        if (publisher.trySchedule() && !enqueue(new Send(publisher))) {
+            // the mailbox is full, the publisher stays scheduled and the Send is retried after the current run
+            rejected.increment();
+            overflow.add(publisher);
+            wakeUp();
+        }
+    }
+
+    @Override
+    public void release(ClientPublisher publisher) {
+        publishers.remove(publisher.getClientId(), publisher);
+    }
+
+    @Override
+    public void onEvicted(EvictionPolicy policy, int dropped, int replaced) {
+        evicted.add(dropped);
+        conflated.add(replaced);
+    }
+
+    @Override
+    public void onDisconnected() {
+        disconnected.increment();
+    }
+
+    @Override
+    public void onGap() {
+        gaps.increment();
+    }
+
+    @Override
+    public void onDemandExhausted() {
+        demandExhausted.increment();
+    }
+
+    @Override
+    public void onBytesExhausted() {
+        bytesExhausted.increment();
+    }
+
+    private ClientPublisher newPublisher(long clientId) {
+        return new ClientPublisher(
+            clientId,
+            listener -> new ServerClientMessageList(
+                serverConfiguration.getMaxMessages(),
+                serverConfiguration.getEvictionPolicy(),
+                listener,
+                queuedBytes
+            ),
+            this,
+            serverConfiguration.isGapNotification() ? webSocketUtils::getGapMessage : null
+        );
+    }
+
+    private long getQueuedMessages() {
+        long queued = 0;
+        for (ClientPublisher publisher : publishers.values()) {
+            queued += publisher.getSize();
+        }
+        return queued;
+    }
+
+    private void terminate() {
+        log.error("Shard [{}] can't continue sending messages", id);
+        stop();
+    }
+
+    abstract static class BaseMessage {
+        final long enqueuedNanos = System.nanoTime();
+    }
+
+    private static class Send extends BaseMessage {
+        private final ClientPublisher publisher;
+
+        private Send(ClientPublisher publisher) {
+            this.publisher = publisher;
+        }
+    }
+}
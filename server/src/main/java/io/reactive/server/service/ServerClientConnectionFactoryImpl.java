@@ -21,29 +21,49 @@ package io.reactive.server.service;
 
 import io.reactive.server.configuration.ServerConfiguration;
 import io.reactive.server.domain.ServerClientConnection;
+import io.reactive.server.metrics.LatencyMetrics;
+import io.reactive.server.util.AdaptiveWindow;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.websocket.SendResult;
 import javax.websocket.Session;
-import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
 
 @Singleton
 public class ServerClientConnectionFactoryImpl implements ServerClientConnectionFactory {
     @Inject
     protected ServerConfiguration serverConfiguration;
 
-    protected static final EmptyCallback EMPTY_CALLBACK = new EmptyCallback();
+    @Inject
+    protected LatencyMetrics latencyMetrics;
+
+    @Inject
+    protected SendResultHandler sendResultHandler;
 
     @Override
     public ServerClientConnection create(long userId, Session session) {
-        return new ServerClientConnection(userId, session, serverConfiguration.getMaxMessagesInFlight(), EMPTY_CALLBACK);
+        return new ServerClientConnection(
+            userId,
+            session,
+            newWindow(),
+            serverConfiguration.getRequestBatch(),
+            serverConfiguration.isSendBinary(),
+            sendResultHandler,
+            latencyMetrics
+        );
     }
 
-    private static final class EmptyCallback implements Consumer<SendResult> {
-        @Override
-        public void accept(SendResult ignored) {
+    private AdaptiveWindow newWindow() {
+        if (!serverConfiguration.isAdaptiveWindow()) {
+            return AdaptiveWindow.fixed(serverConfiguration.getMaxMessagesInFlight());
         }
-    }
 
+        return new AdaptiveWindow(
+            serverConfiguration.getMaxMessagesInFlight(),
+            serverConfiguration.getMinWindow(),
+            serverConfiguration.getMaxWindow(),
+            MICROSECONDS.toNanos(serverConfiguration.getWindowTargetLatency())
+        );
+    }
 }
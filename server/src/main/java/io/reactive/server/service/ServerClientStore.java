@@ -26,6 +26,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
+import java.util.Collection;
 import java.util.List;
 
 @ImplementedBy(ServerClientStoreImpl.class)
@@ -34,15 +35,27 @@ public interface ServerClientStore {
 
     void addConnection(@NotNull ServerClientConnection connection);
 
-    void removeConnection(@NotNull ServerClientConnection connection);
+    /**
+     * Cancels the connection of the session, the client is removed along with its last connection.
+     */
+    void removeConnection(long userId, @NotNull String sessionId);
 
     @Nullable
     ServerClient getClient(long id);
 
     boolean hasClient(long id);
 
+    /**
+     * A copy, use {@link #getLiveClients()} on the hot path.
+     */
     List<ServerClient> getClients();
 
+    /**
+     * Read-only live view of the clients, nothing is copied.
+     * Iteration is weakly consistent: it never fails on concurrent add/remove and visits each client at most once.
+     */
+    Collection<ServerClient> getLiveClients();
+
     @TestOnly
     void clear();
 }
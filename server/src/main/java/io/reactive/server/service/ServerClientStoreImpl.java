@@ -23,12 +23,14 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Striped;
 import io.reactive.server.domain.ServerClient;
 import io.reactive.server.domain.ServerClientConnection;
-import io.reactive.server.util.WebSocketSubscription;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -43,8 +45,13 @@ public class ServerClientStoreImpl implements ServerClientStore {
 
     private final ConcurrentMap<Long, ServerClient> clients = new ConcurrentHashMap<>();
 
+    private final Collection<ServerClient> liveClients = Collections.unmodifiableCollection(clients.values());
+
     private final Striped<Lock> locksPool = lock(256);
 
+    @Inject
+    private MessageSender messageSender;
+
     @Override
     public ServerClient atomicAddClient(@NotNull ServerClient client) {
         log.debug("Add user: [{}]", client);
@@ -67,8 +74,7 @@ public class ServerClientStoreImpl implements ServerClientStore {
 
         try {
             log.info("Subscription for user [{}]", connection.getUserId());
-            WebSocketSubscription webSocketSubscription = new WebSocketSubscription();
-            connection.onSubscribe(webSocketSubscription);
+            messageSender.subscribe(connection.getUserId(), connection);
             log.info("Subscribed successfully for user [{}]", connection.getUserId());
 
             ServerClient actual = atomicAddClient(new ServerClient(connection.getUserId()));
@@ -79,20 +85,20 @@ public class ServerClientStoreImpl implements ServerClientStore {
     }
 
     @Override
-    public void removeConnection(@NotNull ServerClientConnection connection) {
-        log.debug("Remove connection for user [{}]", connection.getUserId());
+    public void removeConnection(long userId, @NotNull String sessionId) {
+        log.debug("Remove connection [{}] for user [{}]", sessionId, userId);
 
-        ServerClient actual = getClient(connection.getUserId());
+        ServerClient actual = getClient(userId);
 
         if (null != actual) {
-            Lock lock = locksPool.get(connection.getUserId());
+            Lock lock = locksPool.get(userId);
             lock.lock();
 
             try {
-                // TODO: move?
-                connection.onComplete();
-
-                actual.removeConnection(connection);
+                ServerClientConnection removed = actual.removeConnection(sessionId);
+                if (removed != null) {
+                    removed.cancel();
+                }
 
                 int connections = actual.getConnections().size();
 
@@ -103,7 +109,7 @@ public class ServerClientStoreImpl implements ServerClientStore {
                     return;
                 }
 
-                removeClient(connection.getUserId());
+                removeClient(userId);
             } finally {
                 lock.unlock();
             }
@@ -126,6 +132,11 @@ public class ServerClientStoreImpl implements ServerClientStore {
         return ImmutableList.copyOf(clients.values());
     }
 
+    @Override
+    public Collection<ServerClient> getLiveClients() {
+        return liveClients;
+    }
+
     @Override
     public void clear() {
         clients.clear();
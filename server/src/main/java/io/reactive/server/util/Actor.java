@@ -22,47 +22,103 @@ package io.reactive.server.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Dispatches messages of its mailbox one at a time on a shared executor.
+ * A run is limited by the throughput: after that many messages the actor goes to the back of the executor queue,
+ * so a flooded actor doesn't hold a thread while others are waiting. A higher throughput means less scheduling
+ * overhead, a lower one means a lower latency of the other actors.
+ */
 public abstract class Actor<M> implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(Actor.class);
 
-    private final Queue<M> messages = new ConcurrentLinkedQueue<>();
+    private final Mailbox<M> messages;
     private final ExecutorService actorExecutor;
+    private final int throughput;
     private final AtomicBoolean working = new AtomicBoolean(false);
     private volatile boolean stop = false;
 
     public Actor(ExecutorService actorExecutor) {
+        this(actorExecutor, new ConcurrentLinkedMailbox<>());
+    }
+
+    public Actor(ExecutorService actorExecutor, Mailbox<M> messages) {
+        this(actorExecutor, messages, 0);
+    }
+
+    /**
+     * @param actorExecutor
+     * @param messages
+     * @param throughput max messages per run, 0 means the mailbox is drained until it's empty
+     */
+    public Actor(ExecutorService actorExecutor, Mailbox<M> messages, int throughput) {
         this.actorExecutor = actorExecutor;
+        this.messages = messages;
+        this.throughput = throughput > 0 ? throughput : Integer.MAX_VALUE;
     }
 
     protected abstract void dispatch(M message);
 
+    /**
+     * Called at the end of every run, on the actor thread, before the next run might start.
+     *
+     * @param dispatched messages
+     * @param nanos
+     * @param yielded true if the run has reached the throughput with messages left in the mailbox
+     */
+    protected void onRun(int dispatched, long nanos, boolean yielded) {
+    }
+
     @Override
     public void run() {
         if (working.get()) {
+            long start = System.nanoTime();
+            int dispatched = 0;
             try {
-                process();
+                dispatched = process();
             } catch (Exception e) {
                 log.error("Can't process message", e);
             } finally {
+                // still owned by this run, so the next run can't overlap the hook
+                onRun(dispatched, System.nanoTime() - start, dispatched >= throughput && hasPending());
                 working.set(false);
-                if (!messages.isEmpty()) {
+                if (hasPending()) {
                     tryToScheduleExecution();
                 }
             }
         }
     }
 
-    protected void process() {
+    /**
+     * @return number of dispatched messages, up to the throughput
+     */
+    protected int process() {
+        int dispatched = 0;
         M message;
-        while ((message = dequeue()) != null && !isStopped()) {
+        while (dispatched < throughput && !isStopped() && (message = dequeue()) != null) {
             dispatch(message);
+            dispatched++;
         }
+        return dispatched;
+    }
+
+    /**
+     * Checked after every run, the actor is scheduled again if true.
+     *
+     * @return true if there is work left, messages in the mailbox by default
+     */
+    protected boolean hasPending() {
+        return !messages.isEmpty();
+    }
+
+    /**
+     * Schedules a run even if the mailbox is empty, for work reported by {@link #hasPending()}.
+     */
+    protected final void wakeUp() {
+        tryToScheduleExecution();
     }
 
     protected final M dequeue() {
@@ -73,12 +129,18 @@ public abstract class Actor<M> implements Runnable {
         return stop;
     }
 
-    protected final void enqueue(M message) {
+    /**
+     * @param message
+     * @return false if the mailbox is full and the message was rejected
+     */
+    protected final boolean enqueue(M message) {
         if (messages.offer(message)) {
             tryToScheduleExecution();
-        } else {
-            stop();
+            return true;
         }
+
+        log.debug("Mailbox is full, message [{}] was rejected", message);
+        return false;
     }
 
     protected void stop() {
@@ -0,0 +1,126 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A number of messages in flight of a single connection, adjusted by AIMD:
+ * the window grows by one message per window of completions, which are faster than the target latency,
+ * and it is halved (at most once per window) when a send is slower or fails.
+ * <p>
+ * A send completes when the frame is written to the socket, so the latency grows along with the socket send buffer
+ * of a slow client.
+ * <p>
+ * The window is changed by credits given back to the demand: a growing window returns an extra one,
+ * a shrinking window withholds completions until messages in flight fit into it.
+ */
+public class AdaptiveWindow {
+    private final int min;
+    private final int max;
+    private final long targetLatencyNanos;
+
+    private double window;
+    // completions to withhold after the window has been decreased
+    private int withheld;
+    // completions left until the window might be decreased again
+    private int untilNextDecrease;
+
+    private volatile int current;
+
+    /**
+     * @param initial the first window, it's kept between min and max
+     * @param min
+     * @param max
+     * @param targetLatencyNanos sends completed slower make the window smaller
+     */
+    public AdaptiveWindow(int initial, int min, int max, long targetLatencyNanos) {
+        Preconditions.checkArgument(min > 0, "Min window MUST BE positive!");
+        Preconditions.checkArgument(max >= min, "Max window MUST BE not less than min!");
+
+        this.min = min;
+        this.max = max;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.window = Math.max(min, Math.min(initial, max));
+        this.current = (int) window;
+    }
+
+    /**
+     * @param size
+     * @return the window which is never changed
+     */
+    public static AdaptiveWindow fixed(int size) {
+        return new AdaptiveWindow(size, size, size, Long.MAX_VALUE);
+    }
+
+    public int getWindow() {
+        return current;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public boolean isFixed() {
+        return min == max;
+    }
+
+    /**
+     * @param latencyNanos from the dispatch to the completion of a send
+     * @param failed
+     * @return a number of credits to give back to the demand, might be zero
+     */
+    public int onCompleted(long latencyNanos, boolean failed) {
+        if (isFixed()) {
+            return 1;
+        }
+
+        synchronized (this) {
+            int before = (int) window;
+
+            if (untilNextDecrease > 0) {
+                untilNextDecrease--;
+            }
+
+            if (failed || latencyNanos > targetLatencyNanos) {
+                if (untilNextDecrease == 0) {
+                    window = Math.max(min, window / 2);
+                    untilNextDecrease = (int) window;
+                }
+            } else {
+                window = Math.min(max, window + 1 / window);
+            }
+
+            int after = (int) window;
+            current = after;
+
+            int credits = 1;
+            if (after > before) {
+                credits += after - before;
+            } else {
+                withheld += before - after;
+            }
+
+            int taken = Math.min(withheld, credits);
+            withheld -= taken;
+            return credits - taken;
+        }
+    }
+}
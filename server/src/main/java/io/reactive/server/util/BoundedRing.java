@@ -0,0 +1,193 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Lock-free bounded multi-producer/multi-consumer ring (D. Vyukov's algorithm).
+ * Each slot has a sequence number which tells whether the slot is ready to be written or read for a given lap.
+ * Multiple consumers are required to evict the oldest element from a producer thread.
+ */
+public class BoundedRing<E> {
+    private final int capacity;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<E> buffer;
+    // published along with the element by the slot sequence
+    private final long[] stamps;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public BoundedRing(int capacity) {
+        // with a single slot the sequence of a published element is equal to the next lap position
+        Preconditions.checkArgument(capacity > 1, "Capacity MUST BE at least 2!");
+
+        this.capacity = capacity;
+        this.sequences = new AtomicLongArray(capacity);
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.stamps = new long[capacity];
+
+        for (int i = 0; i < capacity; i++) {
+            sequences.lazySet(i, i);
+        }
+    }
+
+    /**
+     * @param element
+     * @return false if the ring is full
+     */
+    public boolean offer(@NotNull E element) {
+        return offer(element, 0L);
+    }
+
+    /**
+     * @param element
+     * @param stamp an arbitrary value stored along with the element (e.g. an enqueue time)
+     * @return false if the ring is full
+     */
+    public boolean offer(@NotNull E element, long stamp) {
+        Preconditions.checkArgument(element != null, "Element is required!");
+
+        for (;;) {
+            long position = tail.get();
+            int index = index(position);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    stamps[index] = stamp;
+                    // publishes the element
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            // else another producer has taken the slot, retry
+        }
+    }
+
+    @Nullable
+    public E poll() {
+        long position = claim();
+        return position < 0 ? null : release(position);
+    }
+
+    /**
+     * @param consumer
+     * @param max
+     * @return number of drained elements
+     */
+    public int drainTo(@NotNull Consumer<? super E> consumer, int max) {
+        int drained = 0;
+        E element;
+        while (drained < max && (element = poll()) != null) {
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * @param consumer gets an element and its stamp
+     * @param max
+     * @return number of drained elements
+     */
+    public int drainStampedTo(@NotNull ObjLongConsumer<? super E> consumer, int max) {
+        return drainStampedTo(consumer, max, () -> true);
+    }
+
+    /**
+     * @param consumer gets an element and its stamp
+     * @param max
+     * @param proceed checked before every element
+     * @return number of drained elements
+     */
+    public int drainStampedTo(@NotNull ObjLongConsumer<? super E> consumer, int max, @NotNull BooleanSupplier proceed) {
+        int drained = 0;
+        long position;
+        while (drained < max && proceed.getAsBoolean() && (position = claim()) >= 0) {
+            // must be read before the slot is released to producers
+            long stamp = stamps[index(position)];
+            consumer.accept(release(position), stamp);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * O(1), might be stale under concurrent modifications.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return a position of the claimed slot or -1 if the ring is empty
+     */
+    private long claim() {
+        for (;;) {
+            long position = head.get();
+            long difference = sequences.get(index(position)) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (difference < 0) {
+                return -1;
+            }
+            // else another consumer has taken the slot, retry
+        }
+    }
+
+    private E release(long position) {
+        int index = index(position);
+        E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        // the slot is free for the next lap
+        sequences.set(index, position + capacity);
+        return element;
+    }
+
+    private int index(long position) {
+        return (int) (position % capacity);
+    }
+}
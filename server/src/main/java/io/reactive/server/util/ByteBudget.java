@@ -0,0 +1,98 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes of messages in flight. A message is sent while there are bytes available,
+ * so the limit might be exceeded by a single message. Bytes are counted even if the budget is unlimited.
+ */
+public class ByteBudget {
+    // Long.MAX_VALUE if unlimited
+    private final long limit;
+    private final AtomicLong used = new AtomicLong();
+    // run once by the refund, which makes the budget available again
+    private final Set<Runnable> waiters = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param limit 0 means unlimited
+     */
+    public ByteBudget(long limit) {
+        Preconditions.checkArgument(limit >= 0, "Limit MUST BE not negative!");
+
+        this.limit = limit > 0 ? limit : Long.MAX_VALUE;
+    }
+
+    public boolean isAvailable() {
+        return limit == Long.MAX_VALUE || used.get() < limit;
+    }
+
+    /**
+     * @param bytes of a message to send
+     */
+    public void charge(long bytes) {
+        used.addAndGet(bytes);
+    }
+
+    /**
+     * @param bytes of a sent (or failed) message
+     */
+    public void refund(long bytes) {
+        long after = used.addAndGet(-bytes);
+        if (after < limit && after + bytes >= limit && !waiters.isEmpty()) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Runs the waiter once, when the budget is available: at once or by the refund, which frees the budget.
+     * A waiter registered twice is run once.
+     */
+    public void await(@NotNull Runnable waiter) {
+        waiters.add(waiter);
+        // the budget might have been freed before the waiter has been added
+        if (isAvailable()) {
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        for (Runnable waiter : waiters) {
+            // a concurrent refund might have taken it already
+            if (waiters.remove(waiter)) {
+                waiter.run();
+            }
+        }
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public boolean isUnlimited() {
+        return limit == Long.MAX_VALUE;
+    }
+}
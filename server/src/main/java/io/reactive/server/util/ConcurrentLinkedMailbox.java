@@ -0,0 +1,64 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unbounded mailbox on top of {@link ConcurrentLinkedQueue}.
+ * Allocates a node per message, but never rejects anything.
+ */
+public class ConcurrentLinkedMailbox<M> implements Mailbox<M> {
+    private final Queue<M> messages = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() is O(n)
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Override
+    public boolean offer(@NotNull M message) {
+        messages.offer(message);
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public M poll() {
+        M message = messages.poll();
+        if (message != null) {
+            size.decrementAndGet();
+        }
+        return message;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+}
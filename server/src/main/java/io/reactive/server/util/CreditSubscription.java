@@ -0,0 +1,62 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.Session;
+import java.util.concurrent.Flow;
+
+/**
+ * A subscription to a producer connection: requested messages are sent to the producer as CREDIT frames.
+ */
+public class CreditSubscription implements Flow.Subscription {
+    private static final Logger log = LoggerFactory.getLogger(CreditSubscription.class);
+
+    private final Session session;
+    private final WebSocketUtils webSocketUtils;
+
+    private volatile boolean cancelled;
+
+    public CreditSubscription(@NotNull Session session, @NotNull WebSocketUtils webSocketUtils) {
+        this.session = session;
+        this.webSocketUtils = webSocketUtils;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0 || cancelled || !session.isOpen()) {
+            return;
+        }
+
+        session.getAsyncRemote().sendText(webSocketUtils.getCreditMessage(n).getPayload(), result -> {
+            if (!result.isOK()) {
+                log.error("Can't send credits to the producer", result.getException());
+            }
+        });
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -20,26 +20,51 @@ package io.reactive.server.util;
  */
 
 import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A number of messages the subscriber is ready to receive.
+ * <p>
+ * The publisher is notified only when a request makes the fulfilled demand positive:
+ * while there is demand left, the publisher keeps sending without any wake-up.
+ */
 public class Demand {
     private static final Logger log = LoggerFactory.getLogger(Demand.class);
 
     private final AtomicLong demand = new AtomicLong();
+    private final Runnable onReplenished;
+
+    public Demand() {
+        this(() -> {});
+    }
+
+    /**
+     * @param onReplenished called on the requesting thread, when the demand goes from zero to positive
+     */
+    public Demand(@NotNull Runnable onReplenished) {
+        this.onReplenished = onReplenished;
+    }
 
     /**
      * @param delta
-     * @return total demand
+     * @return total demand, saturated at Long.MAX_VALUE (effectively unbounded)
      */
     public long increase(long delta) {
-        Preconditions.checkArgument(delta > 0, "Delta MUST BE positive!");
+        return increase(delta, true);
+    }
 
-        long newDemand = demand.addAndGet(delta);
-        log.trace("Demand: [{}], delta: [{}]", newDemand, delta);
-        return newDemand;
+    /**
+     * Gives back the claimed, but not used demand without notifying the publisher, which has claimed it.
+     *
+     * @param delta
+     * @return total demand
+     */
+    public long restore(long delta) {
+        return increase(delta, false);
     }
 
     /**
@@ -59,6 +84,26 @@ public class Demand {
         }
     }
 
+    private long increase(long delta, boolean notify) {
+        Preconditions.checkArgument(delta > 0, "Delta MUST BE positive!");
+
+        for (;;) {
+            long current = demand.get();
+            long newDemand = current + delta;
+            if (newDemand < 0) {
+                newDemand = Long.MAX_VALUE;
+            }
+
+            if (demand.compareAndSet(current, newDemand)) {
+                log.trace("Demand: [{}], delta: [{}]", newDemand, delta);
+                if (notify && current == 0) {
+                    onReplenished.run();
+                }
+                return newDemand;
+            }
+        }
+    }
+
     public void reset() {
         demand.set(0);
     }
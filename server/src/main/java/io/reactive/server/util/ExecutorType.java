@@ -0,0 +1,102 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs actors, selected by {@code server.actor.executor.type}.
+ */
+public enum ExecutorType {
+    /**
+     * A fixed number of platform threads with a shared blocking queue.
+     */
+    FIXED {
+        @Override
+        public ExecutorService create(int threads, String name) {
+            return Executors.newFixedThreadPool(
+                threads,
+                new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat(name + "-%d")
+                    .build()
+            );
+        }
+    },
+
+    /**
+     * Work-stealing pool in the async (FIFO) mode, which suits tasks that are never joined.
+     * A worker takes a scheduled actor from its own queue without contending on the shared one.
+     */
+    FORK_JOIN {
+        @Override
+        public ExecutorService create(int threads, String name) {
+            AtomicInteger counter = new AtomicInteger();
+            ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(name + "-" + counter.getAndIncrement());
+                return thread;
+            };
+            return new ForkJoinPool(threads, factory, null, true);
+        }
+    },
+
+    /**
+     * A virtual thread per actor run, mounted on the JDK carrier threads, threads is ignored.
+     * Falls back to {@link #FORK_JOIN} on a JDK without virtual threads (before 21).
+     */
+    VIRTUAL {
+        @Override
+        public ExecutorService create(int threads, String name) {
+            try {
+                // the build targets Java 11, so the API is looked up at runtime
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+                ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+
+                Method executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) executor.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads aren't supported by Java [{}], falling back to [{}]",
+                    System.getProperty("java.version"), FORK_JOIN);
+                return FORK_JOIN.create(threads, name);
+            }
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutorType.class);
+
+    /**
+     * @param threads
+     * @param name a prefix of thread names
+     */
+    public abstract ExecutorService create(int threads, String name);
+}
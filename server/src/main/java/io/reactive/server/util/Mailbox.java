@@ -0,0 +1,45 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A message queue of an actor.
+ * Any thread may offer a message, but only the actor itself (a single thread at a time) polls.
+ */
+public interface Mailbox<M> {
+    /**
+     * @param message
+     * @return false if the mailbox is full and the message was rejected
+     */
+    boolean offer(@NotNull M message);
+
+    @Nullable
+    M poll();
+
+    /**
+     * O(1), might be stale under concurrent modifications.
+     */
+    int size();
+
+    boolean isEmpty();
+}
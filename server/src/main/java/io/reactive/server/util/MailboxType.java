@@ -0,0 +1,41 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public enum MailboxType {
+    /**
+     * Unbounded, capacity is ignored.
+     */
+    LINKED {
+        @Override
+        public <M> Mailbox<M> create(int capacity) {
+            return new ConcurrentLinkedMailbox<>();
+        }
+    },
+
+    MPSC_ARRAY {
+        @Override
+        public <M> Mailbox<M> create(int capacity) {
+            return new MpscArrayMailbox<>(capacity);
+        }
+    };
+
+    public abstract <M> Mailbox<M> create(int capacity);
+}
@@ -0,0 +1,150 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, array-backed multi-producer/single-consumer mailbox.
+ * Producers claim a slot by CAS on the producer index, the consumer just moves the consumer index.
+ * Both indexes are padded to separate cache lines, so producers and the consumer don't false share.
+ */
+public class MpscArrayMailbox<M> extends MpscArrayMailboxConsumerIndexPad implements Mailbox<M> {
+    private static final VarHandle PRODUCER_INDEX;
+    private static final VarHandle CONSUMER_INDEX;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PRODUCER_INDEX = lookup.findVarHandle(MpscArrayMailboxProducerIndex.class, "producerIndex", long.class);
+            CONSUMER_INDEX = lookup.findVarHandle(MpscArrayMailboxConsumerIndex.class, "consumerIndex", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<M> buffer;
+
+    /**
+     * @param capacity will be rounded up to the next power of two
+     */
+    public MpscArrayMailbox(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity MUST BE in (0, 2^30]!");
+
+        int actualCapacity = 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1));
+        this.mask = actualCapacity - 1;
+        this.buffer = new AtomicReferenceArray<>(actualCapacity);
+    }
+
+    @Override
+    public boolean offer(@NotNull M message) {
+        Preconditions.checkArgument(message != null, "Message is required!");
+
+        long capacity = mask + 1;
+        for (;;) {
+            long producer = producerIndex;
+            if (producer - consumerIndex >= capacity) {
+                return false;
+            }
+
+            if (PRODUCER_INDEX.compareAndSet(this, producer, producer + 1)) {
+                // the consumer might see the claimed, but still empty slot, it waits for it in poll()
+                buffer.lazySet(offset(producer), message);
+                return true;
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public M poll() {
+        long consumer = consumerIndex;
+        int offset = offset(consumer);
+
+        M message = buffer.get(offset);
+        if (message == null) {
+            if (consumer == producerIndex) {
+                return null;
+            }
+
+            // a producer has claimed the slot, but hasn't published the message yet
+            do {
+                Thread.onSpinWait();
+                message = buffer.get(offset);
+            } while (message == null);
+        }
+
+        buffer.lazySet(offset, null);
+        CONSUMER_INDEX.setRelease(this, consumer + 1);
+        return message;
+    }
+
+    @Override
+    public int size() {
+        long consumer = consumerIndex;
+        long size = producerIndex - consumer;
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex == producerIndex;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    private int offset(long index) {
+        return (int) index & mask;
+    }
+}
+
+// The class hierarchy keeps the JVM from reordering padding around the hot fields
+
+abstract class MpscArrayMailboxProducerIndexPad {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpscArrayMailboxProducerIndex extends MpscArrayMailboxProducerIndexPad {
+    volatile long producerIndex;
+}
+
+abstract class MpscArrayMailboxConsumerIndexPrePad extends MpscArrayMailboxProducerIndex {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class MpscArrayMailboxConsumerIndex extends MpscArrayMailboxConsumerIndexPrePad {
+    volatile long consumerIndex;
+}
+
+abstract class MpscArrayMailboxConsumerIndexPad extends MpscArrayMailboxConsumerIndex {
+    long p40, p41, p42, p43, p44, p45, p46, p47;
+    long p50, p51, p52, p53, p54, p55, p56, p57;
+}
@@ -1,5 +1,6 @@
 package io.reactive.server.util;
 
+
 /*
  * Copyright (C) 2019 by Denis M. Gabaydulin
  *
@@ -19,71 +20,300 @@ package io.reactive.server.util;
  * limitations under the License.
  */
 
-import com.google.common.collect.ForwardingQueue;
 import io.reactive.server.domain.WebSocketMessage;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Iterator;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 
 /**
  * Represents a bound message queue for a single client.
+ * When the queue is full, messages are evicted according to {@link EvictionPolicy}.
+ * A message with a key (see {@link io.reactive.server.domain.MessageType#getConflationKey}) replaces the pending one
+ * with the same key in place, so a key takes a single slot however often it is updated.
+ * Each message keeps its enqueue time (System.nanoTime()) for latency metrics.
+ * Queued bytes are added to a budget shared by all the lists, a broadcast payload is counted by every list it's in.
  */
-public class ServerClientMessageList implements Iterable<WebSocketMessage> {
-    private final ForwardingQueue<WebSocketMessage> messages;
+public class ServerClientMessageList {
+    private static final VarHandle LATEST;
+
+    static {
+        try {
+            LATEST = MethodHandles.lookup()
+                .findVarHandle(ServerClientMessageList.class, "latest", ConcurrentMap.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final BoundedRing<WebSocketMessage> messages;
+    private final EvictionPolicy policy;
+    private final EvictionListener listener;
+    private final ByteBudget memory;
+
+    // the latest message by key, the ring keeps the first one as a placeholder of its place;
+    // created by the first keyed message, most queues never get one
+    private volatile ConcurrentMap<String, WebSocketMessage> latest;
+
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    // dropped since the client was notified last time
+    private final AtomicLong gap = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
 
-    public ServerClientMessageList(ForwardingQueue<WebSocketMessage> messages) {
-        this.messages = messages;
+    public ServerClientMessageList(int maxMessages) {
+        this(maxMessages, EvictionPolicy.DROP_OLDEST, EvictionListener.NONE);
     }
 
-    public void add(@NotNull WebSocketMessage message) {
-        // TODO: use non blocking queue (on CAS)
-        synchronized (messages) {
-            messages.offer(message);
+    public ServerClientMessageList(int maxMessages, @NotNull EvictionPolicy policy, @NotNull EvictionListener listener) {
+        this(maxMessages, policy, listener, new ByteBudget(0));
+    }
+
+    /**
+     * @param memory queued bytes of all the lists
+     */
+    public ServerClientMessageList(
+        int maxMessages,
+        @NotNull EvictionPolicy policy,
+        @NotNull EvictionListener listener,
+        @NotNull ByteBudget memory
+    ) {
+        this.messages = new BoundedRing<>(maxMessages);
+        this.policy = policy;
+        this.listener = listener;
+        this.memory = memory;
+    }
+
+    /**
+     * @param message
+     * @return number of dropped or conflated messages
+     */
+    public int add(@NotNull WebSocketMessage message) {
+        WebSocketMessage replaced;
+        if (message.getKey() != null && (replaced = getLatest().put(message.getKey(), message)) != null) {
+            // the queued one is replaced
+            account(message.getSize() - replaced.getSize());
+            conflated.incrementAndGet();
+            listener.onEvicted(policy, 0, 1);
+            return 1;
         }
+
+        int dropped = 0;
+        long now = System.nanoTime();
+        // accounted before it's visible to consumers
+        account(message.getSize());
+        while (!messages.offer(message, now)) {
+            if (policy == EvictionPolicy.DROP_NEWEST || policy == EvictionPolicy.DISCONNECT) {
+                forget(message);
+                dropped++;
+                break;
+            }
+
+            // drop the oldest one
+            if (poll() != null) {
+                dropped++;
+            }
+        }
+
+        if (dropped > 0) {
+            evicted.addAndGet(dropped);
+            gap.addAndGet(dropped);
+            listener.onEvicted(policy, dropped, 0);
+        }
+        return dropped;
     }
 
-    public void add(@NotNull List<WebSocketMessage> messages) {
-        synchronized (this.messages) {
-            this.messages.addAll(messages);
+    /**
+     * @param messages
+     * @return number of dropped or conflated messages
+     */
+    public int add(@NotNull List<WebSocketMessage> messages) {
+        int dropped = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            dropped += add(messages.get(i));
         }
+        return dropped;
     }
 
     public int getSize() {
-        synchronized (messages) {
-            return messages.size();
+        return messages.size();
+    }
+
+    /**
+     * @return bytes of queued messages
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Drops the oldest messages, whatever the eviction policy is, to free memory.
+     *
+     * @param target bytes to free
+     * @return freed bytes
+     */
+    public long evictOldest(long target) {
+        long freed = 0;
+        int dropped = 0;
+        WebSocketMessage oldest;
+        while (freed < target && (oldest = poll()) != null) {
+            freed += oldest.getSize();
+            dropped++;
+        }
+
+        if (dropped > 0) {
+            evicted.addAndGet(dropped);
+            gap.addAndGet(dropped);
+            listener.onEvicted(EvictionPolicy.DROP_OLDEST, dropped, 0);
+        }
+        return freed;
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return total number of messages dropped because the queue was full
+     */
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    /**
+     * @return total number of messages replaced by newer ones with the same key
+     */
+    public long getConflated() {
+        return conflated.get();
+    }
+
+    /**
+     * @return number of messages dropped since the previous call, the client should be notified about
+     */
+    public long takeGap() {
+        return gap.get() > 0 ? gap.getAndSet(0) : 0;
+    }
+
+    public boolean hasGap() {
+        return gap.get() > 0;
+    }
+
+    /**
+     * Returns the gap back, if the client couldn't be notified.
+     */
+    public void restoreGap(long dropped) {
+        if (dropped > 0) {
+            gap.addAndGet(dropped);
         }
     }
 
-    @NotNull
-    @Override
-    public Iterator<WebSocketMessage> iterator() {
-        return new ServerClientMessageListIterator();
+    @Nullable
+    public WebSocketMessage poll() {
+        WebSocketMessage message = messages.poll();
+        return message != null ? resolve(message) : null;
+    }
+
+    /**
+     * @param consumer
+     * @param max
+     * @return number of drained messages
+     */
+    public int drainTo(@NotNull Consumer<? super WebSocketMessage> consumer, int max) {
+        return messages.drainTo(message -> consumer.accept(resolve(message)), max);
     }
 
-    private class ServerClientMessageListIterator implements Iterator<WebSocketMessage> {
-        @Override
-        public boolean hasNext() {
-            synchronized (messages) {
-                return !messages.isEmpty();
+    /**
+     * @param consumer gets a message and its enqueue time
+     * @param max
+     * @return number of drained messages
+     */
+    public int drainWithEnqueueTime(@NotNull ObjLongConsumer<? super WebSocketMessage> consumer, int max) {
+        return messages.drainStampedTo((message, enqueued) -> consumer.accept(resolve(message), enqueued), max);
+    }
+
+    /**
+     * @param consumer gets a message and its enqueue time
+     * @param max
+     * @param proceed checked before every message, e.g. a byte budget
+     * @return number of drained messages
+     */
+    public int drainWithEnqueueTime(
+        @NotNull ObjLongConsumer<? super WebSocketMessage> consumer,
+        int max,
+        @NotNull BooleanSupplier proceed
+    ) {
+        return messages.drainStampedTo((message, enqueued) -> consumer.accept(resolve(message), enqueued), max, proceed);
+    }
+
+    /**
+     * Discards all the queued messages, e.g. when nobody is subscribed to them anymore.
+     *
+     * @return number of discarded messages
+     */
+    public int clear() {
+        return messages.drainTo(this::resolve, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the latest message with the key of the placeholder taken from the ring
+     */
+    private WebSocketMessage resolve(WebSocketMessage placeholder) {
+        WebSocketMessage message = placeholder;
+        if (placeholder.getKey() != null) {
+            WebSocketMessage latestMessage = getLatest().remove(placeholder.getKey());
+            if (latestMessage != null) {
+                message = latestMessage;
             }
         }
 
-        @Override
-        public WebSocketMessage next() {
-            synchronized (messages) {
-                if (messages.isEmpty()) {
-                    throw new NoSuchElementException();
-                }
+        account(-message.getSize());
+        return message;
+    }
 
-                return messages.poll();
+    /**
+     * @param rejected a message which hasn't got into the ring
+     */
+    private void forget(WebSocketMessage rejected) {
+        account(-rejected.getSize());
+
+        if (rejected.getKey() != null) {
+            WebSocketMessage replaced = getLatest().remove(rejected.getKey());
+            if (replaced != null && replaced != rejected) {
+                // conflated meanwhile, its size was accounted as a difference with the rejected one
+                account(rejected.getSize() - replaced.getSize());
+            }
+        }
+    }
+
+    private ConcurrentMap<String, WebSocketMessage> getLatest() {
+        ConcurrentMap<String, WebSocketMessage> map = latest;
+        if (map == null) {
+            map = new ConcurrentHashMap<>();
+            if (!LATEST.compareAndSet(this, null, map)) {
+                map = latest;
             }
         }
+        return map;
+    }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException("ServerClientMessageListIterator is not modifiable!");
+    private void account(long delta) {
+        bytes.addAndGet(delta);
+        if (delta > 0) {
+            memory.charge(delta);
+        } else if (delta < 0) {
+            memory.refund(-delta);
         }
     }
 }
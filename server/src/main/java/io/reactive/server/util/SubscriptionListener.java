@@ -0,0 +1,47 @@
+package io.reactive.server.util;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Observes a subscription on behalf of its publisher.
+ */
+public interface SubscriptionListener {
+    SubscriptionListener NONE = new SubscriptionListener() {
+        @Override
+        public void onRequested(WebSocketSubscription subscription) {
+        }
+
+        @Override
+        public void onCancelled(WebSocketSubscription subscription) {
+        }
+    };
+
+    /**
+     * Called after a request makes the fulfilled demand positive, the bytes are refunded to an exhausted subscription
+     * or the subscription is failed, so the publisher might send again.
+     */
+    void onRequested(WebSocketSubscription subscription);
+
+    /**
+     * Called once, on the cancelling thread.
+     */
+    void onCancelled(WebSocketSubscription subscription);
+}
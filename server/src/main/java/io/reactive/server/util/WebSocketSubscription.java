@@ -20,24 +20,145 @@ package io.reactive.server.util;
  */
 
 import io.reactive.server.domain.HasDemand;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * The demand in messages along with bytes in flight of the connection and of the whole server.
+ * <p>
+ * Follows the Reactive Streams rules: the demand saturates at Long.MAX_VALUE (§3.17),
+ * a non-positive request is turned into onError by the publisher (§3.9),
+ * and request/cancel become no-ops once it is cancelled (§3.6, §3.7).
+ */
 public class WebSocketSubscription implements Flow.Subscription, HasDemand {
-    private final Demand demand = new Demand();
+    private final Demand demand;
+    private final ByteBudget bytes;
+    private final ByteBudget outboundBytes;
+    private final SubscriptionListener listener;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    // an invalid request, the publisher signals it as onError
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    public WebSocketSubscription() {
+        this(new ByteBudget(0), new ByteBudget(0));
+    }
+
+    /**
+     * @param bytes of the connection
+     * @param outboundBytes shared by all the connections
+     */
+    public WebSocketSubscription(@NotNull ByteBudget bytes, @NotNull ByteBudget outboundBytes) {
+        this(bytes, outboundBytes, SubscriptionListener.NONE);
+    }
+
+    /**
+     * @param bytes of the connection
+     * @param outboundBytes shared by all the connections
+     * @param listener the publisher, which is woken up by requests and releases the subscriber on cancel
+     */
+    public WebSocketSubscription(
+        @NotNull ByteBudget bytes,
+        @NotNull ByteBudget outboundBytes,
+        @NotNull SubscriptionListener listener
+    ) {
+        this.bytes = bytes;
+        this.outboundBytes = outboundBytes;
+        this.listener = listener;
+        // the publisher keeps sending while there is demand, so only the first credits wake it up
+        this.demand = new Demand(() -> listener.onRequested(this));
+    }
 
     @Override
     public void request(long n) {
+        if (cancelled.get()) {
+            return;
+        }
+
+        if (n <= 0) {
+            fail(new IllegalArgumentException("Non-positive request: " + n + " (Reactive Streams §3.9)"));
+            return;
+        }
+
         demand.increase(n);
     }
 
     @Override
     public void cancel() {
-        demand.reset();
+        if (cancelled.compareAndSet(false, true)) {
+            demand.reset();
+            listener.onCancelled(this);
+        }
+    }
+
+    /**
+     * Terminates the subscription, the error is delivered to the subscriber by the publisher.
+     */
+    public void fail(@NotNull Throwable throwable) {
+        if (cancelled.compareAndSet(false, true)) {
+            demand.reset();
+            error.set(throwable);
+            listener.onRequested(this);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return an error to signal to the subscriber, once
+     */
+    @Nullable
+    public Throwable takeError() {
+        return error.get() != null ? error.getAndSet(null) : null;
     }
 
     @Override
     public Demand getDemand() {
         return demand;
     }
+
+    /**
+     * @return true if a message might be sent without exceeding the connection and the server byte budgets
+     */
+    public boolean hasBytes() {
+        return bytes.isAvailable() && outboundBytes.isAvailable();
+    }
+
+    public void charge(long messageBytes) {
+        bytes.charge(messageBytes);
+        outboundBytes.charge(messageBytes);
+    }
+
+    /**
+     * Wakes the publisher up, if the subscription has run out of bytes and the refund makes it able to send again.
+     */
+    public void refund(long messageBytes) {
+        boolean exhausted = !hasBytes();
+        bytes.refund(messageBytes);
+        outboundBytes.refund(messageBytes);
+
+        if (exhausted && hasBytes() && !cancelled.get()) {
+            listener.onRequested(this);
+        }
+    }
+
+    /**
+     * Runs the waiter once the bytes of all the connections are available again, if they aren't.
+     * The connection bytes wake the publisher up by the {@link #refund(long)}.
+     */
+    public void awaitOutboundBytes(@NotNull Runnable waiter) {
+        if (!outboundBytes.isAvailable()) {
+            outboundBytes.await(waiter);
+        }
+    }
+
+    public ByteBudget getBytes() {
+        return bytes;
+    }
 }
@@ -20,20 +20,29 @@ package io.reactive.server.util;
  */
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.CreditMsg;
+import io.reactive.server.domain.GapMsg;
+import io.reactive.server.domain.Header;
 import io.reactive.server.domain.Message;
+import io.reactive.server.domain.MessageType;
 import io.reactive.server.domain.WebSocketMessage;
 import io.reactive.server.util.json.JsonMapper;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.nio.ByteBuffer;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static java.lang.Long.parseLong;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.regex.Pattern.compile;
 
 @Singleton
@@ -45,6 +54,9 @@ public class WebSocketUtils {
     @Inject
     private JsonMapper mapper;
 
+    @Inject
+    private ServerConfiguration serverConfiguration;
+
     @Nullable
     public Long getUserId(String queryString) {
         Matcher matcher = userIdPattern.matcher(queryString);
@@ -57,10 +69,65 @@ public class WebSocketUtils {
 
     public WebSocketMessage getMessage(@NotNull Message message) {
         try {
-            return new WebSocketMessage(mapper.writeValueAsString(message), message.getHeader().getCreated().getMillis());
+            String payload = mapper.writeValueAsString(message);
+            long timestamp = message.getHeader().getCreated().getMillis();
+
+            WebSocketMessage webSocketMessage = serverConfiguration.isSendBinary()
+                // binary frames are sent as is, so encode the payload right away
+                ? new WebSocketMessage(payload, encode(payload), timestamp)
+                : new WebSocketMessage(payload, timestamp);
+
+            webSocketMessage.setKey(message.getHeader().getMessageType().getConflationKey(message.getHeader()));
+            return webSocketMessage;
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param evicted number of messages dropped for the client
+     */
+    public WebSocketMessage getGapMessage(long evicted) {
+        GapMsg gap = new GapMsg();
+        gap.setEvicted(evicted);
+
+        return getServerMessage(MessageType.GAP, gap);
+    }
+
+    /**
+     * @param credits number of messages a producer is allowed to send
+     */
+    public WebSocketMessage getCreditMessage(long credits) {
+        CreditMsg credit = new CreditMsg();
+        credit.setCredits(credits);
+
+        return getServerMessage(MessageType.CREDIT, credit);
+    }
+
+    private WebSocketMessage getServerMessage(@NotNull MessageType type, @NotNull Object body) {
+        Header header = new Header();
+        header.setMessageId(UUID.randomUUID().toString());
+        header.setMessageType(type);
+        header.setCreated(DateTime.now());
+
+        Message message = new Message();
+        message.setHeader(header);
+        try {
+            message.setMessage(mapper.writeValueAsString(body));
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
+
+        return getMessage(message);
+    }
+
+    private ByteBuffer encode(@NotNull String payload) {
+        byte[] bytes = payload.getBytes(UTF_8);
+        if (!serverConfiguration.isDirectBuffers()) {
+            return ByteBuffer.wrap(bytes);
+        }
+
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
     }
 }
 
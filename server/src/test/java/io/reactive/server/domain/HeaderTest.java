@@ -32,6 +32,7 @@ import javax.inject.Inject;
 import java.io.IOException;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
 @Guice(modules = {RootModule.class})
 public class HeaderTest {
@@ -53,6 +54,29 @@ public class HeaderTest {
         assertEquals(objectMapper.writeValueAsString(header), "{\"messageId\":\"42\",\"messageType\":\"HELLO_MESSAGE\",\"recipient\":\"42\",\"created\":\"2018-01-14T13:27:52.178Z\"}");
     }
 
+    @Test
+    public void serializeKey() throws JsonProcessingException {
+        Header header = new Header();
+        header.setCreated(DateTime.parse("2018-01-14T13:27:52.178Z"));
+        header.setMessageId("42");
+        header.setMessageType(MessageType.STATE);
+        header.setKey("EURUSD");
+
+        String json = objectMapper.writeValueAsString(header);
+        assertEquals(json, "{\"messageId\":\"42\",\"messageType\":\"STATE\",\"recipient\":null,\"created\":\"2018-01-14T13:27:52.178Z\",\"key\":\"EURUSD\"}");
+    }
+
+    @Test
+    public void conflationKey() {
+        Header header = new Header();
+        header.setMessageType(MessageType.STATE);
+        assertEquals(MessageType.STATE.getConflationKey(header), "STATE");
+
+        header.setKey("EURUSD");
+        assertEquals(MessageType.STATE.getConflationKey(header), "STATE:EURUSD");
+        assertNull(MessageType.HELLO_MESSAGE.getConflationKey(header));
+    }
+
     @Test
     public void deserialize() throws IOException {
         Header header = new Header();
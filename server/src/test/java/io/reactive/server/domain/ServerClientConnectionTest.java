@@ -20,8 +20,13 @@ package io.reactive.server.domain;
  */
 
 import io.reactive.common.configuration.RootModule;
+import io.reactive.server.configuration.ActorModule;
 import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.metrics.LatencyMetrics;
+import io.reactive.server.metrics.MessageLatency;
 import io.reactive.server.service.ServerClientConnectionFactory;
+import io.reactive.server.util.AdaptiveWindow;
+import io.reactive.server.util.ByteBudget;
 import io.reactive.server.util.WebSocketSubscription;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.Guice;
@@ -32,13 +37,22 @@ import javax.websocket.RemoteEndpoint;
 import javax.websocket.SendHandler;
 import javax.websocket.SendResult;
 import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
-@Guice(modules = {RootModule.class})
+@Guice(modules = {RootModule.class, ActorModule.class})
 public class ServerClientConnectionTest {
     @Inject
     private ServerClientConnectionFactory connectionFactory;
@@ -46,6 +60,9 @@ public class ServerClientConnectionTest {
     @Inject
     private ServerConfiguration serverConfiguration;
 
+    @Inject
+    private LatencyMetrics latencyMetrics;
+
     @Test
     public void initialDemand() {
         WebSocketSubscription socketSubscription = new WebSocketSubscription();
@@ -73,4 +90,167 @@ public class ServerClientConnectionTest {
         clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
         assertEquals(socketSubscription.getDemand().current(), serverConfiguration.getMaxMessagesInFlight() + 1);
     }
+
+    @Test
+    public void binaryFrameSharesEncodedPayload() {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        doAnswer((Answer<Void>) invocation -> {
+            ByteBuffer payload = invocation.getArgument(0, ByteBuffer.class);
+            assertEquals(UTF_8.decode(payload).toString(), "{\"hello\":\"World\"}");
+            SendHandler callback = invocation.getArgument(1, SendHandler.class);
+            callback.onResult(new SendResult());
+            return null;
+        }).when(async)
+            .sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+
+        WebSocketSubscription socketSubscription = new WebSocketSubscription();
+        ServerClientConnection clientConnection = new ServerClientConnection(42L, session, 1, 1, true, result -> {});
+        clientConnection.onSubscribe(socketSubscription);
+
+        WebSocketMessage message = new WebSocketMessage("{\"hello\":\"World\"}", System.currentTimeMillis());
+        // every send gets its own view of the same bytes
+        clientConnection.onNext(message);
+        clientConnection.onNext(message);
+
+        verify(async, times(2)).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+        verify(async, never()).sendText(anyString(), any(SendHandler.class));
+        assertEquals(message.getEncodedPayload().remaining(), message.getPayload().length());
+    }
+
+    @Test
+    public void demandIsIncreasedByBatches() {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        doAnswer((Answer<Void>) invocation -> {
+            SendHandler callback = invocation.getArgument(1, SendHandler.class);
+            callback.onResult(new SendResult());
+            return null;
+        }).when(async)
+            .sendText(anyString(), any(SendHandler.class));
+
+        WebSocketSubscription socketSubscription = new WebSocketSubscription();
+        ServerClientConnection clientConnection = new ServerClientConnection(42L, session, 4, 2, false, result -> {});
+        clientConnection.onSubscribe(socketSubscription);
+
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+        assertEquals(socketSubscription.getDemand().current(), 4);
+
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+        assertEquals(socketSubscription.getDemand().current(), 6);
+    }
+
+    @Test
+    public void slowSendShrinksWindow() {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        doAnswer((Answer<Void>) invocation -> {
+            SendHandler callback = invocation.getArgument(1, SendHandler.class);
+            callback.onResult(new SendResult(new IOException("Broken pipe")));
+            return null;
+        }).when(async)
+            .sendText(anyString(), any(SendHandler.class));
+
+        WebSocketSubscription socketSubscription = new WebSocketSubscription();
+        AdaptiveWindow window = new AdaptiveWindow(4, 1, 8, 1000);
+        ServerClientConnection clientConnection = new ServerClientConnection(
+            42L, session, window, 1, false, result -> {}, null);
+        clientConnection.onSubscribe(socketSubscription);
+        assertEquals(socketSubscription.getDemand().current(), 4);
+
+        socketSubscription.getDemand().decrease(1);
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+
+        // the failed send isn't given back
+        assertEquals(clientConnection.getWindow(), 2);
+        assertEquals(socketSubscription.getDemand().current(), 3);
+    }
+
+    @Test
+    public void bytesAreChargedUntilSent() {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        List<SendHandler> inFlight = new ArrayList<>();
+        doAnswer((Answer<Void>) invocation -> {
+            inFlight.add(invocation.getArgument(1, SendHandler.class));
+            return null;
+        }).when(async)
+            .sendText(anyString(), any(SendHandler.class));
+
+        ByteBudget outbound = new ByteBudget(100);
+        WebSocketSubscription socketSubscription = new WebSocketSubscription(new ByteBudget(4), outbound);
+        ServerClientConnection clientConnection = new ServerClientConnection(42L, session, 4, 1, false, result -> {});
+        clientConnection.onSubscribe(socketSubscription);
+
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+        assertTrue(socketSubscription.hasBytes());
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+        assertFalse(socketSubscription.hasBytes());
+        assertEquals(socketSubscription.getBytes().getUsed(), 4);
+        assertEquals(outbound.getUsed(), 4);
+
+        inFlight.get(0).onResult(new SendResult());
+        assertTrue(socketSubscription.hasBytes());
+        assertEquals(outbound.getUsed(), 2);
+    }
+
+    @Test
+    public void latencyIsRecorded() {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        doAnswer((Answer<Void>) invocation -> {
+            SendHandler callback = invocation.getArgument(1, SendHandler.class);
+            callback.onResult(new SendResult());
+            return null;
+        }).when(async)
+            .sendText(anyString(), any(SendHandler.class));
+
+        MessageLatency latency = latencyMetrics.getAggregated();
+        long dispatched = latency.getEnqueueToDispatch().getHistogram().getTotalCount();
+        long completed = latency.getDispatchToComplete().getHistogram().getTotalCount();
+        long total = latency.getTotal().getHistogram().getTotalCount();
+
+        ServerClientConnection clientConnection = connectionFactory.create(42L, session);
+        clientConnection.onSubscribe(new WebSocketSubscription());
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()), System.nanoTime());
+
+        assertEquals(latency.getEnqueueToDispatch().getHistogram().getTotalCount(), dispatched + 1);
+        assertEquals(latency.getDispatchToComplete().getHistogram().getTotalCount(), completed + 1);
+        assertEquals(latency.getTotal().getHistogram().getTotalCount(), total + 1);
+    }
+
+    @Test
+    public void sendHandlersAreReused() {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        List<SendHandler> handlers = new ArrayList<>();
+        doAnswer((Answer<Void>) invocation -> {
+            handlers.add(invocation.getArgument(1, SendHandler.class));
+            return null;
+        }).when(async)
+            .sendText(anyString(), any(SendHandler.class));
+
+        ServerClientConnection clientConnection = connectionFactory.create(42L, session);
+        WebSocketSubscription socketSubscription = new WebSocketSubscription();
+        clientConnection.onSubscribe(socketSubscription);
+
+        // both in flight
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+        assertNotSame(handlers.get(0), handlers.get(1));
+
+        handlers.get(1).onResult(new SendResult());
+        clientConnection.onNext(new WebSocketMessage("{}", System.currentTimeMillis()));
+        assertSame(handlers.get(2), handlers.get(1));
+
+        handlers.get(0).onResult(new SendResult());
+        handlers.get(2).onResult(new SendResult());
+        assertEquals(socketSubscription.getBytes().getUsed(), 0);
+    }
 }
@@ -0,0 +1,74 @@
+package io.reactive.server.domain;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import javax.websocket.Session;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class ServerClientTest {
+    @Test
+    public void connectionsSnapshot() {
+        ServerClient client = new ServerClient(42L);
+        ServerClientConnection first = new ServerClientConnection(42L, session("a"), 1, result -> {});
+        ServerClientConnection second = new ServerClientConnection(42L, session("b"), 1, result -> {});
+
+        client.addConnection(first);
+        client.addConnection(first);
+        List<ServerClientConnection> snapshot = client.getConnections();
+        assertEquals(snapshot.size(), 1);
+        // no copy, while the set of connections isn't changed
+        assertSame(client.getConnections(), snapshot);
+
+        client.addConnection(second);
+        assertEquals(client.getConnections().size(), 2);
+        // the old snapshot is never modified
+        assertEquals(snapshot.size(), 1);
+
+        client.removeConnection(first);
+        assertEquals(client.getConnections().size(), 1);
+        assertSame(client.getConnections().get(0), second);
+
+        client.removeConnection(second);
+        assertTrue(client.getConnections().isEmpty());
+    }
+
+    @Test
+    public void removeBySessionId() {
+        ServerClient client = new ServerClient(42L);
+        ServerClientConnection connection = new ServerClientConnection(42L, session("a"), 1, result -> {});
+        client.addConnection(connection);
+
+        assertNull(client.removeConnection("b"));
+        assertSame(client.removeConnection("a"), connection);
+        assertTrue(client.getConnections().isEmpty());
+    }
+
+    private static Session session(String id) {
+        Session session = mock(Session.class);
+        when(session.getId()).thenReturn(id);
+        return session;
+    }
+}
@@ -0,0 +1,46 @@
+package io.reactive.server.domain;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+public class WebSocketMessageTest {
+    @Test
+    public void sizeIsStableAfterEncoding() {
+        WebSocketMessage message = new WebSocketMessage("{\"name\":\"привет\"}", 0L);
+        int size = message.getSize();
+        assertEquals(size, "{\"name\":\"привет\"}".getBytes(UTF_8).length);
+
+        assertEquals(message.getEncodedPayload().remaining(), size);
+        assertEquals(message.getSize(), size);
+    }
+
+    @Test
+    public void sizeOfEncodedPayload() {
+        ByteBuffer encoded = ByteBuffer.wrap("{\"name\":\"привет\"}".getBytes(UTF_8));
+        WebSocketMessage message = new WebSocketMessage("{\"name\":\"привет\"}", encoded, 0L);
+        assertEquals(message.getSize(), encoded.remaining());
+    }
+}
@@ -49,6 +49,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 @Guice(modules = {RootModule.class, ActorModule.class})
 public class UndertowIntegrationTests {
@@ -97,6 +98,35 @@ public class UndertowIntegrationTests {
         session.close();
     }
 
+    @Test
+    public void metrics() throws Exception {
+        // the snapshot is sent on open and as a reply to a request
+        WebSocketHandler metricsHandler = new WebSocketHandler(2);
+        Session session = client.connect(metricsHandler, new URI("ws://127.0.0.1:6644/metrics"))
+            .get();
+        session.getRemote().sendString("{}");
+
+        metricsHandler.latch.await();
+
+        assertEquals(metricsHandler.getMessages().size(), 2);
+        assertTrue(metricsHandler.getMessages().get(1).startsWith("{"));
+
+        session.close();
+    }
+
+    @Test
+    public void producerGetsCredits() throws Exception {
+        WebSocketHandler producerHandler = new WebSocketHandler(1);
+        Session session = client.connect(producerHandler, new URI("ws://127.0.0.1:6644/message"))
+            .get();
+
+        producerHandler.latch.await();
+
+        assertTrue(producerHandler.getMessages().get(0).contains("\"messageType\":\"CREDIT\""));
+
+        session.close();
+    }
+
     @Test
     public void checkDemand() throws Exception {
         // it's required sending enough messages to make a congestion
@@ -0,0 +1,72 @@
+package io.reactive.server.metrics;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.ServerClient;
+import io.reactive.server.domain.ServerClientConnection;
+import io.reactive.server.service.ServerClientStore;
+import org.testng.annotations.Test;
+
+import javax.websocket.Session;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class LatencyMetricsTest {
+    @Test
+    @SuppressWarnings("unchecked")
+    public void perConnection() {
+        ServerConfiguration configuration = mock(ServerConfiguration.class);
+        when(configuration.isLatencyPerConnection()).thenReturn(true);
+        ServerClientStore clientStore = mock(ServerClientStore.class);
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        LatencyMetrics latencyMetrics = new LatencyMetrics(configuration, metricsRegistry, () -> clientStore);
+
+        Session session = mock(Session.class);
+        when(session.getId()).thenReturn("a");
+        ServerClientConnection connection = new ServerClientConnection(42L, session, 1, 1, false, result -> {}, latencyMetrics);
+        ServerClient client = new ServerClient(42L);
+        client.addConnection(connection);
+        when(clientStore.getLiveClients()).thenReturn(List.of(client));
+
+        connection.getLatency().onDispatched(1000);
+
+        Map<String, Map<String, HistogramSummary>> connections =
+            (Map<String, Map<String, HistogramSummary>>) metricsRegistry.getSnapshot().get("latency.connections");
+        assertEquals(connections.keySet(), Set.of("42/a"));
+        assertEquals(connections.get("42/a").get("enqueueToDispatch").getCount(), 1L);
+    }
+
+    @Test
+    public void disabled() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        LatencyMetrics latencyMetrics = new LatencyMetrics(
+            mock(ServerConfiguration.class), metricsRegistry, () -> mock(ServerClientStore.class));
+
+        assertNull(latencyMetrics.newConnectionLatency());
+        assertFalse(metricsRegistry.getSnapshot().containsKey("latency.connections"));
+        assertTrue(metricsRegistry.getSnapshot().containsKey("latency"));
+    }
+}
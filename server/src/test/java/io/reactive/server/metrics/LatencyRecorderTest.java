@@ -0,0 +1,75 @@
+package io.reactive.server.metrics;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.HdrHistogram.Histogram;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LatencyRecorderTest {
+    @Test
+    public void stripesAreMerged() throws InterruptedException {
+        int threads = 8;
+        int values = 10_000;
+        LatencyRecorder recorder = new LatencyRecorder(3);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 1; i <= values; i++) {
+                    recorder.record(i);
+                }
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        Histogram histogram = recorder.getHistogram();
+        assertEquals(histogram.getTotalCount(), threads * values);
+        assertEquals(histogram.getValueAtPercentile(50), 5000, 50);
+
+        // accumulated between reads
+        recorder.record(1);
+        assertEquals(recorder.getHistogram().getTotalCount(), threads * values + 1);
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyRecorder recorder = new LatencyRecorder(1);
+        recorder.record(-1);
+        recorder.record(Long.MAX_VALUE);
+
+        HistogramSummary summary = recorder.getSummary();
+        assertEquals(summary.getCount(), 2);
+        assertEquals(recorder.getHistogram().getMinValue(), 0);
+        assertTrue(summary.getMax() >= LatencyRecorder.HIGHEST_TRACKABLE_MICROS);
+    }
+}
@@ -0,0 +1,64 @@
+package io.reactive.server.metrics;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.common.configuration.RootModule;
+import io.reactive.server.util.json.JsonMapper;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Guice(modules = {RootModule.class})
+public class MetricsRegistryTest {
+    @Inject
+    private JsonMapper objectMapper;
+
+    @Test
+    public void snapshot() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        AtomicLong depth = new AtomicLong(3);
+
+        registry.counter("test.counter").add(2);
+        registry.counter("test.counter").increment();
+        registry.gauge("test.gauge", depth::get);
+        registry.histogram("test.histogram").record(42);
+        registry.report("test.report", () -> new ClientQueueStats(42L, 1, 2, 0, 0));
+
+        depth.set(5);
+        Map<String, Object> snapshot = registry.getSnapshot();
+
+        assertEquals(snapshot.get("test.counter"), 3L);
+        assertEquals(registry.getCounter("test.counter"), 3L);
+        assertEquals(registry.getCounter("unknown"), 0L);
+        assertEquals(snapshot.get("test.gauge"), 5L);
+        assertEquals(((HistogramSummary) snapshot.get("test.histogram")).getCount(), 1L);
+
+        String json = objectMapper.writeValueAsString(snapshot);
+        assertTrue(json.contains("\"test.counter\":\"3\""), json);
+        assertTrue(json.contains("\"clientId\":\"42\""), json);
+    }
+}
@@ -0,0 +1,508 @@
+package io.reactive.server.service;
+
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.domain.MessageSubscriber;
+import io.reactive.server.domain.RecipientMode;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.util.ByteBudget;
+import io.reactive.server.util.EvictionPolicy;
+import io.reactive.server.util.ServerClientMessageList;
+import io.reactive.server.util.WebSocketSubscription;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.testng.Assert.*;
+
+public class ClientPublisherTest {
+    @Test
+    public void noMoreThanRequested() {
+        RecordingOwner owner = new RecordingOwner();
+        ClientPublisher publisher = publisher(owner, new ByteBudget(0));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        publisher.subscribe(subscriber);
+        add(publisher, 3);
+        subscriber.subscription.request(2);
+        publisher.drain();
+
+        assertEquals(subscriber.received, List.of("0", "1"));
+        assertEquals(owner.demandExhausted, 1);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        publisher.drain();
+        assertEquals(subscriber.received, List.of("0", "1", "2"));
+    }
+
+    @Test
+    public void cancelReleasesQueue() {
+        RecordingOwner owner = new RecordingOwner();
+        ByteBudget memory = new ByteBudget(0);
+        ClientPublisher publisher = publisher(owner, memory);
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        add(publisher, 3);
+        // a message is counted by every queue it's in
+        assertEquals(memory.getUsed(), 6);
+
+        // the queue of the subscriber is dropped at once, no drain is required
+        first.subscription.cancel();
+        assertEquals(publisher.getSubscribers(), 1);
+        assertEquals(memory.getUsed(), 3);
+        assertFalse(publisher.isReleased());
+
+        second.subscription.cancel();
+        assertTrue(publisher.isReleased());
+        assertEquals(owner.released, 1);
+        assertEquals(memory.getUsed(), 0);
+        assertEquals(publisher.getSize(), 0);
+
+        // a late message isn't kept either
+        add(publisher, 1);
+        assertEquals(memory.getUsed(), 0);
+    }
+
+    @Test
+    public void everyConnectionGetsAll() {
+        ClientPublisher publisher = publisher(new RecordingOwner(), new ByteBudget(0));
+        RecordingSubscriber fast = new RecordingSubscriber();
+        RecordingSubscriber slow = new RecordingSubscriber();
+
+        publisher.subscribe(fast);
+        publisher.subscribe(slow);
+        WebSocketMessage message = new WebSocketMessage("0", 0L);
+        publisher.publish(message);
+        add(publisher, 2);
+
+        fast.subscription.request(10);
+        publisher.drain();
+
+        // the slow one has no demand, but it doesn't hold the fast one back
+        assertEquals(fast.received, List.of("0", "0", "1"));
+        assertSame(fast.messages.get(0), message);
+        assertTrue(slow.received.isEmpty());
+
+        slow.subscription.request(10);
+        publisher.drain();
+        assertEquals(slow.received, List.of("0", "0", "1"));
+        assertSame(slow.messages.get(0), message);
+    }
+
+    @Test
+    public void singleGoesToTargetedSession() {
+        ClientPublisher publisher = publisher(new RecordingOwner(), new ByteBudget(0));
+        RecordingSubscriber first = new RecordingSubscriber("a");
+        RecordingSubscriber second = new RecordingSubscriber("b");
+
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        publisher.publish(single("0", "b"));
+        publisher.publish(single("1", "c"));
+        // any session, the least loaded one
+        publisher.publish(single("2", null));
+
+        first.subscription.request(10);
+        second.subscription.request(10);
+        publisher.drain();
+
+        assertEquals(first.received, List.of("2"));
+        assertEquals(second.received, List.of("0"));
+    }
+
+    @Test
+    public void roundRobin() {
+        ClientPublisher publisher = new ClientPublisher(
+            1L, listener -> new ServerClientMessageList(100, EvictionPolicy.DROP_OLDEST, listener), new RecordingOwner(), null);
+        List<String> order = new ArrayList<>();
+        RecordingSubscriber first = new RecordingSubscriber(order, "first");
+        RecordingSubscriber second = new RecordingSubscriber(order, "second");
+
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        first.subscription.request(Long.MAX_VALUE);
+        second.subscription.request(Long.MAX_VALUE);
+        add(publisher, 2 * ClientPublisher.QUANTUM);
+        publisher.drain();
+
+        int quantum = ClientPublisher.QUANTUM;
+        assertEquals(order.size(), 4 * quantum);
+        assertEquals(order.subList(0, quantum), Collections.nCopies(quantum, "first"));
+        assertEquals(order.subList(quantum, 2 * quantum), Collections.nCopies(quantum, "second"));
+        assertEquals(order.subList(2 * quantum, 3 * quantum), Collections.nCopies(quantum, "first"));
+
+        // the next drain starts from the other one
+        order.clear();
+        add(publisher, 1);
+        publisher.drain();
+        assertEquals(order, List.of("second", "first"));
+    }
+
+    @Test
+    public void drainIsLimited() {
+        RecordingOwner owner = new RecordingOwner();
+        int limit = ClientPublisher.DRAIN_LIMIT;
+        ClientPublisher publisher = new ClientPublisher(
+            1L, listener -> new ServerClientMessageList(2 * limit, EvictionPolicy.DROP_OLDEST, listener), owner, null);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        add(publisher, limit + 10);
+        int scheduled = owner.scheduled;
+
+        // the rest is sent by the next drain
+        publisher.drain();
+        assertEquals(subscriber.received.size(), limit);
+        assertEquals(owner.scheduled, scheduled + 1);
+
+        publisher.drain();
+        assertEquals(subscriber.received.size(), limit + 10);
+        assertEquals(owner.scheduled, scheduled + 1);
+    }
+
+    @Test
+    public void stalledSubscriberIsNotScheduled() {
+        RecordingOwner owner = new RecordingOwner();
+        ClientPublisher publisher = publisher(owner, new ByteBudget(0));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        publisher.subscribe(subscriber);
+        int subscribed = owner.scheduled;
+        add(publisher, 3);
+        publisher.drain();
+        assertEquals(owner.scheduled, subscribed);
+
+        // the replenished demand wakes it up
+        subscriber.subscription.request(1);
+        assertEquals(owner.scheduled, subscribed + 1);
+        publisher.drain();
+        assertEquals(subscriber.received, List.of("0"));
+        assertEquals(owner.scheduled, subscribed + 1);
+
+        // so does a message, while there is demand
+        subscriber.subscription.request(5);
+        publisher.drain();
+        add(publisher, 1);
+        assertEquals(owner.scheduled, subscribed + 3);
+
+        // the demand isn't fulfilled yet, the publisher keeps sending without a wake-up
+        publisher.drain();
+        subscriber.subscription.request(5);
+        assertEquals(owner.scheduled, subscribed + 3);
+    }
+
+    @Test
+    public void refundWakesExhaustedSubscriber() {
+        RecordingOwner owner = new RecordingOwner();
+        ClientPublisher publisher = publisher(owner, new ByteBudget(0));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber, new ByteBudget(1), new ByteBudget(0));
+
+        WebSocketSubscription subscription = (WebSocketSubscription) subscriber.subscription;
+        subscription.request(1);
+        subscription.charge(1);
+        int scheduled = owner.scheduled;
+
+        // no bytes to send it
+        add(publisher, 1);
+        assertEquals(owner.scheduled, scheduled);
+
+        subscription.refund(1);
+        assertEquals(owner.scheduled, scheduled + 1);
+        publisher.drain();
+        assertEquals(subscriber.received, List.of("0"));
+    }
+
+    @Test
+    public void outboundRefundWakesWaitingSubscriber() {
+        RecordingOwner owner = new RecordingOwner();
+        ClientPublisher publisher = publisher(owner, new ByteBudget(0));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ByteBudget outbound = new ByteBudget(1);
+        publisher.subscribe(subscriber, new ByteBudget(0), outbound);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        // held by another connection
+        outbound.charge(1);
+        int scheduled = owner.scheduled;
+        add(publisher, 3);
+        publisher.drain();
+        publisher.drain();
+        assertEquals(owner.scheduled, scheduled);
+        assertTrue(subscriber.received.isEmpty());
+
+        outbound.refund(1);
+        assertEquals(owner.scheduled, scheduled + 1);
+        publisher.drain();
+        assertEquals(subscriber.received, List.of("0", "1", "2"));
+    }
+
+    @Test
+    public void releasedPublisherIsNotSubscribed() {
+        RecordingOwner owner = new RecordingOwner();
+        ClientPublisher publisher = publisher(owner, new ByteBudget(0));
+        RecordingSubscriber first = new RecordingSubscriber();
+        assertTrue(publisher.trySubscribe(first, new ByteBudget(0), new ByteBudget(0)));
+
+        first.subscription.cancel();
+        assertTrue(publisher.isReleased());
+        assertEquals(owner.released, 1);
+
+        // the owner creates a new one
+        RecordingSubscriber second = new RecordingSubscriber();
+        assertFalse(publisher.trySubscribe(second, new ByteBudget(0), new ByteBudget(0)));
+        assertNull(second.subscription);
+    }
+
+    @Test
+    public void releaseWaitsForReservedSubscriber() {
+        RecordingOwner owner = new RecordingOwner();
+        ClientPublisher publisher = publisher(owner, new ByteBudget(0));
+        RecordingSubscriber first = new RecordingSubscriber();
+        publisher.subscribe(first);
+
+        // the last one cancels while the next one is being subscribed
+        RecordingSubscriber second = new RecordingSubscriber() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                super.onSubscribe(subscription);
+                first.subscription.cancel();
+            }
+        };
+        assertTrue(publisher.trySubscribe(second, new ByteBudget(0), new ByteBudget(0)));
+        assertFalse(publisher.isReleased());
+        assertEquals(publisher.getSubscribers(), 1);
+
+        second.subscription.request(1);
+        add(publisher, 1);
+        publisher.drain();
+        assertEquals(second.received, List.of("0"));
+
+        second.subscription.cancel();
+        assertTrue(publisher.isReleased());
+        assertEquals(owner.released, 1);
+    }
+
+    @Test
+    public void backlogWaitsForSubscriber() {
+        ClientPublisher publisher = publisher(new RecordingOwner(), new ByteBudget(0));
+        add(publisher, 2);
+        assertEquals(publisher.getSize(), 2);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(10);
+        publisher.drain();
+
+        assertEquals(subscriber.received, List.of("0", "1"));
+        assertEquals(publisher.getSize(), 0);
+    }
+
+    @Test
+    public void slowConnectionIsDisconnected() {
+        ClientPublisher publisher = new ClientPublisher(
+            1L, listener -> new ServerClientMessageList(2, EvictionPolicy.DISCONNECT, listener), new RecordingOwner(), null);
+        RecordingSubscriber fast = new RecordingSubscriber();
+        RecordingSubscriber slow = new RecordingSubscriber();
+
+        publisher.subscribe(fast);
+        publisher.subscribe(slow);
+        fast.subscription.request(10);
+
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(new WebSocketMessage(String.valueOf(i), 0L));
+            publisher.drain();
+        }
+
+        assertEquals(fast.received, List.of("0", "1", "2"));
+        assertNull(fast.error);
+        assertEquals(slow.error.getMessage(), "Slow consumer");
+        assertEquals(publisher.getSubscribers(), 1);
+    }
+
+    @Test
+    public void nonPositiveRequestIsError() {
+        ClientPublisher publisher = publisher(new RecordingOwner(), new ByteBudget(0));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        publisher.subscribe(subscriber);
+        add(publisher, 1);
+        subscriber.subscription.request(0);
+        publisher.drain();
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(subscriber.received.isEmpty());
+        assertEquals(publisher.getSubscribers(), 0);
+    }
+
+    @Test
+    public void completeAfterQueuedMessages() {
+        ClientPublisher publisher = publisher(new RecordingOwner(), new ByteBudget(0));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        publisher.subscribe(subscriber);
+        add(publisher, 2);
+        publisher.complete();
+        subscriber.subscription.request(1);
+        publisher.drain();
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        publisher.drain();
+        assertEquals(subscriber.received, List.of("0", "1"));
+        assertTrue(subscriber.completed);
+
+        // a late subscriber is completed right away
+        RecordingSubscriber late = new RecordingSubscriber();
+        publisher.subscribe(late);
+        assertNotNull(late.subscription);
+        assertTrue(late.completed);
+    }
+
+    @Test
+    public void errorDropsQueue() {
+        RecordingOwner owner = new RecordingOwner();
+        ClientPublisher publisher = publisher(owner, new ByteBudget(0));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        publisher.subscribe(subscriber);
+        add(publisher, 2);
+        subscriber.subscription.request(10);
+        publisher.error(new IllegalStateException("Slow consumer"));
+        publisher.drain();
+
+        assertTrue(subscriber.received.isEmpty());
+        assertEquals(subscriber.error.getMessage(), "Slow consumer");
+        assertEquals(publisher.getSize(), 0);
+        assertEquals(owner.released, 1);
+
+        // signals are sent once
+        publisher.drain();
+        assertEquals(subscriber.errors, 1);
+    }
+
+    private static ClientPublisher publisher(ClientPublisher.Owner owner, ByteBudget memory) {
+        return new ClientPublisher(
+            1L, listener -> new ServerClientMessageList(10, EvictionPolicy.DROP_OLDEST, listener, memory), owner, null);
+    }
+
+    private static void add(ClientPublisher publisher, int count) {
+        for (int i = 0; i < count; i++) {
+            publisher.publish(new WebSocketMessage(String.valueOf(i), 0L));
+        }
+    }
+
+    private static class RecordingOwner implements ClientPublisher.Owner {
+        private int scheduled;
+        private int released;
+        private int demandExhausted;
+
+        @Override
+        public void schedule(ClientPublisher publisher) {
+            // drained by the test
+            scheduled++;
+        }
+
+        @Override
+        public void release(ClientPublisher publisher) {
+            released++;
+        }
+
+        @Override
+        public void onDemandExhausted() {
+            demandExhausted++;
+        }
+    }
+
+    private static WebSocketMessage single(String payload, String sessionId) {
+        WebSocketMessage message = new WebSocketMessage(payload, 0L);
+        message.setMode(RecipientMode.SINGLE);
+        message.setSessionId(sessionId);
+        return message;
+    }
+
+    private static class RecordingSubscriber implements MessageSubscriber {
+        private final String sessionId;
+        private final List<WebSocketMessage> messages = new ArrayList<>();
+        private final List<String> received = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private int errors;
+        private boolean completed;
+
+        private final List<String> order;
+        private final String name;
+
+        private RecordingSubscriber() {
+            this(null);
+        }
+
+        private RecordingSubscriber(String sessionId) {
+            this(sessionId, new ArrayList<>(), null);
+        }
+
+        private RecordingSubscriber(List<String> order, String name) {
+            this(null, order, name);
+        }
+
+        private RecordingSubscriber(String sessionId, List<String> order, String name) {
+            this.sessionId = sessionId;
+            this.order = order;
+            this.name = name;
+        }
+
+        @Override
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(WebSocketMessage item) {
+            messages.add(item);
+            received.add(item.getPayload());
+            order.add(name);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            errors++;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.util.Providers;
+import io.reactive.common.configuration.RootModule;
+import io.reactive.server.configuration.ActorModule;
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.Header;
+import io.reactive.server.domain.Message;
+import io.reactive.server.domain.MessageType;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.WebSocketUtils;
+import org.joda.time.DateTime;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+
+@Guice(modules = {RootModule.class, ActorModule.class})
+public class InboundSubscriberTest {
+    @Inject
+    private Provider<InboundSubscriber> subscribers;
+
+    @Test
+    public void creditsAreGivenByBatches() {
+        RecordingSubscription subscription = new RecordingSubscription();
+        InboundSubscriber subscriber = subscribers.get();
+
+        subscriber.onSubscribe(subscription);
+        assertEquals(subscription.requested, List.of(100L));
+
+        for (int i = 0; i < 49; i++) {
+            subscriber.onNext(message());
+        }
+        assertEquals(subscription.requested, List.of(100L));
+
+        subscriber.onNext(message());
+        assertEquals(subscription.requested, List.of(100L, 50L));
+
+        subscriber.onComplete();
+        assertEquals(subscription.cancelled, 1);
+    }
+
+    @Test
+    public void overloadedSenderSheds() {
+        ServerConfiguration configuration = mock(ServerConfiguration.class);
+        when(configuration.getMessageMultiplier()).thenReturn(5);
+        MemoryAccountant accountant = mock(MemoryAccountant.class);
+        // the first message finds the sender overloaded, the second one gets the capacity for two copies
+        when(accountant.isOverloaded()).thenReturn(true, false);
+        when(accountant.tryAcquireCapacity()).thenReturn(true, false);
+        MessageSender sender = mock(MessageSender.class);
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+        InboundSubscriber subscriber = subscriber(
+            configuration, accountant, sender, metricsRegistry, mock(WebSocketUtils.class));
+        subscriber.onSubscribe(new RecordingSubscription());
+
+        subscriber.onNext(message());
+        verify(sender, never()).broadcast(anyIterable(), nullable(WebSocketMessage.class));
+        assertEquals(metricsRegistry.getCounter("memory.producer.shed"), 5);
+
+        subscriber.onNext(message());
+        verify(sender, times(2)).broadcast(anyIterable(), nullable(WebSocketMessage.class));
+        verify(accountant, never()).whenCapacity(any());
+        assertEquals(metricsRegistry.getCounter("memory.producer.shed"), 8);
+    }
+
+    @Test
+    public void creditedMessagesWaitForCapacity() {
+        ServerConfiguration configuration = mock(ServerConfiguration.class);
+        when(configuration.getMessageMultiplier()).thenReturn(1);
+        when(configuration.getProducerCredits()).thenReturn(10);
+        MemoryAccountant accountant = mock(MemoryAccountant.class);
+        when(accountant.isOverloaded()).thenReturn(true);
+        MessageSender sender = mock(MessageSender.class);
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        WebSocketMessage first = mock(WebSocketMessage.class);
+        WebSocketMessage second = mock(WebSocketMessage.class);
+        WebSocketUtils webSocketUtils = mock(WebSocketUtils.class);
+        when(webSocketUtils.getMessage(any())).thenReturn(first, second);
+
+        InboundSubscriber subscriber = subscriber(configuration, accountant, sender, metricsRegistry, webSocketUtils);
+        subscriber.onSubscribe(new RecordingSubscription());
+
+        subscriber.onNext(message());
+        subscriber.onNext(message());
+        verify(sender, never()).broadcast(anyIterable(), nullable(WebSocketMessage.class));
+
+        // a single drain waits for both
+        ArgumentCaptor<Runnable> drain = ArgumentCaptor.forClass(Runnable.class);
+        verify(accountant).whenCapacity(drain.capture());
+
+        when(accountant.isOverloaded()).thenReturn(false);
+        drain.getValue().run();
+
+        InOrder inOrder = inOrder(sender);
+        inOrder.verify(sender).broadcast(anyIterable(), eq(first));
+        inOrder.verify(sender).broadcast(anyIterable(), eq(second));
+        assertEquals(metricsRegistry.getCounter("memory.producer.shed"), 0);
+    }
+
+    private static InboundSubscriber subscriber(
+        ServerConfiguration configuration,
+        MemoryAccountant accountant,
+        MessageSender sender,
+        MetricsRegistry metricsRegistry,
+        WebSocketUtils webSocketUtils
+    ) {
+        // constant providers, so the mocks aren't injected
+        return com.google.inject.Guice.createInjector(binder -> {
+            binder.bind(ServerConfiguration.class).toProvider(Providers.of(configuration));
+            binder.bind(MemoryAccountant.class).toProvider(Providers.of(accountant));
+            binder.bind(MessageSender.class).toProvider(Providers.of(sender));
+            binder.bind(MetricsRegistry.class).toProvider(Providers.of(metricsRegistry));
+            binder.bind(ServerClientStore.class).toProvider(Providers.of(mock(ServerClientStore.class)));
+            binder.bind(WebSocketUtils.class).toProvider(Providers.of(webSocketUtils));
+        }).getInstance(InboundSubscriber.class);
+    }
+
+    private static Message message() {
+        Header header = new Header();
+        header.setMessageId("42");
+        header.setMessageType(MessageType.HELLO_MESSAGE);
+        header.setCreated(DateTime.now());
+
+        Message message = new Message();
+        message.setHeader(header);
+        message.setMessage("{\"hello\":\"World\"}");
+        return message;
+    }
+
+    private static class RecordingSubscription implements Flow.Subscription {
+        private final List<Long> requested = new ArrayList<>();
+        private int cancelled;
+
+        @Override
+        public void request(long n) {
+            requested.add(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled++;
+        }
+    }
+}
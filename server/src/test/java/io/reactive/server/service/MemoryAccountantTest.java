@@ -0,0 +1,115 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.metrics.MetricsRegistry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class MemoryAccountantTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterClass
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void watermarks() {
+        MemoryAccountant accountant = accountant(100, 50);
+
+        accountant.getQueued().charge(80);
+        assertFalse(accountant.isOverloaded());
+        assertEquals(accountant.getExcess(), 0);
+
+        accountant.getQueued().charge(40);
+        assertTrue(accountant.isOverloaded());
+        assertEquals(accountant.getExcess(), 71);
+        assertFalse(accountant.tryAcquireCapacity());
+
+        // still overloaded until the low watermark
+        accountant.getQueued().refund(40);
+        assertTrue(accountant.isOverloaded());
+
+        accountant.getQueued().refund(40);
+        assertFalse(accountant.isOverloaded());
+        assertTrue(accountant.tryAcquireCapacity());
+    }
+
+    @Test
+    public void inFlightBytesAreCounted() {
+        ServerConfiguration configuration = configuration(100, 50);
+        OutboundBudget inFlight = new OutboundBudget(configuration, new MetricsRegistry());
+        MemoryAccountant accountant = accountant(configuration, inFlight);
+
+        accountant.getQueued().charge(60);
+        inFlight.charge(60);
+        assertEquals(accountant.getUsed(), 120);
+        assertTrue(accountant.isOverloaded());
+    }
+
+    @Test
+    public void waitingTaskRunsBelowLowWatermark() throws InterruptedException {
+        MemoryAccountant accountant = accountant(100, 50);
+        accountant.getQueued().charge(120);
+
+        CountDownLatch done = new CountDownLatch(1);
+        accountant.whenCapacity(done::countDown);
+        assertFalse(done.await(20, TimeUnit.MILLISECONDS));
+
+        accountant.getQueued().refund(80);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void disabled() {
+        MemoryAccountant accountant = accountant(0, 0);
+        accountant.getQueued().charge(Long.MAX_VALUE / 2);
+        assertFalse(accountant.isOverloaded());
+    }
+
+    private MemoryAccountant accountant(long high, long low) {
+        ServerConfiguration configuration = configuration(high, low);
+        return accountant(configuration, new OutboundBudget(configuration, new MetricsRegistry()));
+    }
+
+    private MemoryAccountant accountant(ServerConfiguration configuration, OutboundBudget inFlight) {
+        return new MemoryAccountant(
+            configuration, inFlight, new MetricsRegistry(), scheduler, MoreExecutors.newDirectExecutorService());
+    }
+
+    private static ServerConfiguration configuration(long high, long low) {
+        ServerConfiguration configuration = mock(ServerConfiguration.class);
+        when(configuration.getMemoryHighWatermark()).thenReturn(high);
+        when(configuration.getMemoryLowWatermark()).thenReturn(low);
+        return configuration;
+    }
+}
@@ -0,0 +1,221 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.MessageSubscriber;
+import io.reactive.server.domain.ServerClient;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.metrics.ClientQueueStats;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.ByteBudget;
+import io.reactive.server.util.EvictionPolicy;
+import io.reactive.server.util.MailboxType;
+import io.reactive.server.util.WebSocketUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MessageSenderImplTest {
+    private static final int SHARDS = 4;
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterMethod
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sameClientSameShard() {
+        MessageSenderImpl sender = sender();
+        MessageSenderImpl other = sender();
+
+        Set<Integer> used = new HashSet<>();
+        for (long clientId = 0; clientId < 1000; clientId++) {
+            int shard = sender.getShardIndex(clientId);
+            assertEquals(sender.getShardIndex(clientId), shard);
+            assertEquals(other.getShardIndex(clientId), shard);
+            used.add(shard);
+        }
+        // sequential ids are spread over all the shards
+        assertEquals(used.size(), SHARDS);
+    }
+
+    @Test
+    public void clientIsQueuedInOneShard() {
+        MessageSenderImpl sender = sender();
+        for (int i = 0; i < 5; i++) {
+            sender.broadcast(List.of(new ServerClient(42L)), new WebSocketMessage(String.valueOf(i), 0L));
+        }
+
+        List<ClientQueueStats> queues = sender.getSlowestClients();
+        assertEquals(queues.size(), 1);
+        assertEquals(queues.get(0).getClientId(), 42L);
+        assertEquals(queues.get(0).getQueued(), 5);
+    }
+
+    @Test
+    public void broadcastReachesEveryClient() throws InterruptedException {
+        MessageSenderImpl sender = sender();
+        int clients = 50;
+        CountDownLatch received = new CountDownLatch(clients);
+        List<ServerClient> recipients = new ArrayList<>();
+        List<CountingSubscriber> subscribers = new ArrayList<>();
+        for (long clientId = 0; clientId < clients; clientId++) {
+            CountingSubscriber subscriber = new CountingSubscriber(received);
+            sender.subscribe(clientId, subscriber);
+            subscribers.add(subscriber);
+            recipients.add(new ServerClient(clientId));
+        }
+
+        sender.broadcast(recipients, new WebSocketMessage("{}", 0L));
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        for (CountingSubscriber subscriber : subscribers) {
+            assertEquals(subscriber.messages.get(), 1);
+        }
+    }
+
+    @Test
+    public void largestQueuesAreShed() throws InterruptedException {
+        ServerConfiguration configuration = configuration();
+        when(configuration.getMemoryHighWatermark()).thenReturn(100L);
+        when(configuration.getMemoryLowWatermark()).thenReturn(50L);
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        OutboundBudget outboundBudget = new OutboundBudget(configuration, metricsRegistry);
+        MemoryAccountant memoryAccountant = new MemoryAccountant(
+            configuration, outboundBudget, metricsRegistry, scheduler, executor);
+        MessageSenderImpl sender = sender(configuration, memoryAccountant, outboundBudget, metricsRegistry);
+
+        List<ServerClient> large = List.of(new ServerClient(1L));
+        for (int i = 0; i < 5; i++) {
+            sender.broadcast(large, new WebSocketMessage("12345678901234567890", 0L));
+        }
+        sender.broadcast(List.of(new ServerClient(2L)), new WebSocketMessage("1234567890", 0L));
+        assertTrue(memoryAccountant.isOverloaded());
+
+        sender.shedIfOverloaded();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (memoryAccountant.isOverloaded() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertFalse(memoryAccountant.isOverloaded());
+        assertTrue(metricsRegistry.getCounter("memory.evicted.bytes") >= 61);
+        // the largest queue has given a half, the next one the rest
+        List<ClientQueueStats> queues = sender.getSlowestClients();
+        assertEquals(queues.get(0).getClientId(), 1L);
+        assertEquals(queues.get(0).getBytes(), 40L);
+        assertEquals(queues.get(1).getBytes(), 0L);
+    }
+
+    private MessageSenderImpl sender() {
+        ServerConfiguration configuration = configuration();
+        MemoryAccountant memoryAccountant = mock(MemoryAccountant.class);
+        when(memoryAccountant.getQueued()).thenReturn(new ByteBudget(0));
+
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        return sender(
+            configuration, memoryAccountant, new OutboundBudget(configuration, metricsRegistry), metricsRegistry);
+    }
+
+    private MessageSenderImpl sender(
+        ServerConfiguration configuration,
+        MemoryAccountant memoryAccountant,
+        OutboundBudget outboundBudget,
+        MetricsRegistry metricsRegistry
+    ) {
+        return new MessageSenderImpl(
+            executor,
+            scheduler,
+            mock(WebSocketUtils.class),
+            configuration,
+            memoryAccountant,
+            outboundBudget,
+            metricsRegistry
+        );
+    }
+
+    private static ServerConfiguration configuration() {
+        ServerConfiguration configuration = mock(ServerConfiguration.class);
+        when(configuration.getSenderShards()).thenReturn(SHARDS);
+        when(configuration.getMailboxType()).thenReturn(MailboxType.LINKED);
+        when(configuration.getMaxMessages()).thenReturn(16);
+        when(configuration.getEvictionPolicy()).thenReturn(EvictionPolicy.DROP_OLDEST);
+        return configuration;
+    }
+
+    private static class CountingSubscriber implements MessageSubscriber {
+        private final CountDownLatch received;
+        private final AtomicInteger messages = new AtomicInteger();
+
+        private CountingSubscriber(CountDownLatch received) {
+            this.received = received;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(WebSocketMessage item) {
+            messages.incrementAndGet();
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
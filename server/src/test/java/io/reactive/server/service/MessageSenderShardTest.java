@@ -0,0 +1,122 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.configuration.ServerConfiguration;
+import io.reactive.server.domain.MessageSubscriber;
+import io.reactive.server.domain.WebSocketMessage;
+import io.reactive.server.metrics.MetricsRegistry;
+import io.reactive.server.util.ByteBudget;
+import io.reactive.server.util.EvictionPolicy;
+import io.reactive.server.util.MailboxType;
+import io.reactive.server.util.WebSocketUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MessageSenderShardTest {
+    private ExecutorService executor;
+    private CountDownLatch started;
+    private MetricsRegistry metricsRegistry;
+    private MessageSenderShard shard;
+
+    @BeforeMethod
+    public void setUp() {
+        // a single thread, which is busy until the mailbox is filled
+        executor = Executors.newSingleThreadExecutor();
+        started = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        ServerConfiguration configuration = mock(ServerConfiguration.class);
+        when(configuration.getMailboxType()).thenReturn(MailboxType.MPSC_ARRAY);
+        when(configuration.getMailboxCapacity()).thenReturn(2);
+        when(configuration.getMaxMessages()).thenReturn(16);
+        when(configuration.getEvictionPolicy()).thenReturn(EvictionPolicy.DROP_OLDEST);
+
+        metricsRegistry = new MetricsRegistry();
+        shard = new MessageSenderShard(
+            0, executor, configuration, mock(WebSocketUtils.class), new ByteBudget(0), metricsRegistry);
+    }
+
+    @AfterMethod
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectedSendIsRetried() throws InterruptedException {
+        int clients = 8;
+        CountDownLatch received = new CountDownLatch(clients);
+        for (long clientId = 0; clientId < clients; clientId++) {
+            shard.subscribe(clientId, new CountingSubscriber(received), new ByteBudget(0), new ByteBudget(0));
+            shard.addMessage(clientId, new WebSocketMessage(String.valueOf(clientId), 0L));
+        }
+
+        // the mailbox holds 2 Sends, the rest are waiting in the overflow
+        assertEquals(metricsRegistry.getCounter("sender.mailbox.rejected"), clients - 2);
+
+        started.countDown();
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+    }
+
+    private static class CountingSubscriber implements MessageSubscriber {
+        private final CountDownLatch received;
+
+        private CountingSubscriber(CountDownLatch received) {
+            this.received = received;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(WebSocketMessage item) {
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
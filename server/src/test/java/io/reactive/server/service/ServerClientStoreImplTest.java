@@ -0,0 +1,94 @@
+package io.reactive.server.service;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.util.Providers;
+import io.reactive.server.domain.ServerClient;
+import io.reactive.server.domain.ServerClientConnection;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.websocket.Session;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class ServerClientStoreImplTest {
+    private ServerClientStoreImpl clientStore;
+
+    @BeforeMethod
+    public void setUp() {
+        MessageSender messageSender = mock(MessageSender.class);
+        clientStore = com.google.inject.Guice.createInjector(
+            binder -> binder.bind(MessageSender.class).toProvider(Providers.of(messageSender))
+        ).getInstance(ServerClientStoreImpl.class);
+    }
+
+    @Test
+    public void liveClientsExcludeClosed() {
+        Collection<ServerClient> live = clientStore.getLiveClients();
+        clientStore.addConnection(connection(1L, "a"));
+        clientStore.addConnection(connection(2L, "b"));
+        clientStore.addConnection(connection(3L, "c"));
+        clientStore.addConnection(connection(3L, "d"));
+        List<ServerClient> copy = clientStore.getClients();
+
+        clientStore.removeConnection(2L, "b");
+        // the client has one more connection
+        clientStore.removeConnection(3L, "c");
+
+        assertEquals(ids(live), Set.of(1L, 3L));
+        assertEquals(ids(copy), Set.of(1L, 2L, 3L));
+
+        clientStore.removeConnection(3L, "d");
+        assertEquals(ids(clientStore.getLiveClients()), Set.of(1L));
+    }
+
+    @Test
+    public void removeWhileIterating() {
+        for (long clientId = 0; clientId < 10; clientId++) {
+            clientStore.addConnection(connection(clientId, "a"));
+        }
+
+        int visited = 0;
+        for (ServerClient client : clientStore.getLiveClients()) {
+            clientStore.removeConnection(client.getId(), "a");
+            visited++;
+        }
+
+        assertEquals(visited, 10);
+        assertEquals(clientStore.getLiveClients().size(), 0);
+    }
+
+    private static Set<Long> ids(Collection<ServerClient> clients) {
+        return clients.stream().map(ServerClient::getId).collect(Collectors.toSet());
+    }
+
+    private static ServerClientConnection connection(long clientId, String sessionId) {
+        Session session = mock(Session.class);
+        when(session.getId()).thenReturn(sessionId);
+        return new ServerClientConnection(clientId, session, 1, 1, false, result -> {}, null);
+    }
+}
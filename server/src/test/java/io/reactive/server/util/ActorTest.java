@@ -0,0 +1,133 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ActorTest {
+    private ExecutorService executor;
+    private CountDownLatch started;
+
+    @BeforeMethod
+    public void setUp() throws InterruptedException {
+        // a single thread, which is busy until the mailboxes are filled
+        executor = Executors.newSingleThreadExecutor();
+        started = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void yieldsAfterThroughput() throws InterruptedException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        RecordingActor actor = new RecordingActor(executor, 4, "a", events);
+        for (int i = 0; i < 10; i++) {
+            actor.tell(i);
+        }
+
+        started.countDown();
+        assertTrue(actor.done.await(10, TimeUnit.SECONDS));
+        assertEquals(actor.runs, List.of("4:true", "4:true", "2:false"));
+    }
+
+    @Test
+    public void floodedActorYields() throws InterruptedException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        RecordingActor flooded = new RecordingActor(executor, 4, "a", events);
+        RecordingActor other = new RecordingActor(executor, 4, "b", events);
+        for (int i = 0; i < 10; i++) {
+            flooded.tell(i);
+        }
+        other.tell(0);
+
+        started.countDown();
+        assertTrue(flooded.done.await(10, TimeUnit.SECONDS));
+        assertTrue(other.done.await(10, TimeUnit.SECONDS));
+
+        // the other one doesn't wait until the flooded one is drained
+        assertEquals(events.indexOf("b0"), 4);
+    }
+
+    @Test
+    public void unlimited() throws InterruptedException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        RecordingActor actor = new RecordingActor(executor, 0, "a", events);
+        for (int i = 0; i < 10; i++) {
+            actor.tell(i);
+        }
+
+        started.countDown();
+        assertTrue(actor.done.await(10, TimeUnit.SECONDS));
+        assertEquals(actor.runs, List.of("10:false"));
+    }
+
+    private static class RecordingActor extends Actor<Integer> {
+        private final String name;
+        private final List<String> events;
+        private final List<String> runs = new CopyOnWriteArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        RecordingActor(ExecutorService executor, int throughput, String name, List<String> events) {
+            super(executor, new ConcurrentLinkedMailbox<>(), throughput);
+            this.name = name;
+            this.events = events;
+        }
+
+        void tell(int message) {
+            enqueue(message);
+        }
+
+        @Override
+        protected void dispatch(Integer message) {
+            events.add(name + message);
+        }
+
+        @Override
+        protected void onRun(int dispatched, long nanos, boolean yielded) {
+            runs.add(dispatched + ":" + yielded);
+            if (getQueueSize() == 0) {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptiveWindowTest {
+    private static final long TARGET = 1000;
+    private static final long FAST = 10;
+    private static final long SLOW = 10000;
+
+    @Test
+    public void fixed() {
+        AdaptiveWindow window = AdaptiveWindow.fixed(10);
+        assertTrue(window.isFixed());
+        assertEquals(window.onCompleted(SLOW, true), 1);
+        assertEquals(window.getWindow(), 10);
+    }
+
+    @Test
+    public void growsWhileFast() {
+        AdaptiveWindow window = new AdaptiveWindow(10, 1, 20, TARGET);
+
+        int credits = 0;
+        for (int i = 0; i < 10; i++) {
+            credits += window.onCompleted(FAST, false);
+        }
+        assertEquals(window.getWindow(), 10);
+
+        // about one more message per window
+        credits += window.onCompleted(FAST, false);
+        assertEquals(window.getWindow(), 11);
+        assertEquals(credits, 12);
+    }
+
+    @Test
+    public void neverExceedsMax() {
+        AdaptiveWindow window = new AdaptiveWindow(10, 1, 12, TARGET);
+
+        int credits = 0;
+        for (int i = 0; i < 1000; i++) {
+            credits += window.onCompleted(FAST, false);
+        }
+
+        assertEquals(window.getWindow(), 12);
+        assertEquals(credits, 1000 + 2);
+    }
+
+    @Test
+    public void shrinksWhenSlow() {
+        AdaptiveWindow window = new AdaptiveWindow(10, 1, 20, TARGET);
+
+        assertEquals(window.onCompleted(SLOW, false), 0);
+        assertEquals(window.getWindow(), 5);
+
+        // a single decrease per window
+        assertEquals(window.onCompleted(SLOW, false), 0);
+        assertEquals(window.getWindow(), 5);
+
+        // messages in flight must fit into the new window first
+        int credits = 0;
+        for (int i = 0; i < 3; i++) {
+            credits += window.onCompleted(FAST, false);
+        }
+        assertEquals(credits, 0);
+        assertEquals(window.onCompleted(FAST, false), 1);
+    }
+
+    @Test
+    public void failureShrinks() {
+        AdaptiveWindow window = new AdaptiveWindow(10, 4, 20, TARGET);
+
+        window.onCompleted(FAST, true);
+        assertEquals(window.getWindow(), 5);
+
+        for (int i = 0; i < 5; i++) {
+            window.onCompleted(FAST, true);
+        }
+        assertEquals(window.getWindow(), 4);
+    }
+}
@@ -0,0 +1,76 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class ByteBudgetTest {
+    @Test
+    public void unlimited() {
+        ByteBudget budget = new ByteBudget(0);
+        budget.charge(Integer.MAX_VALUE);
+        assertTrue(budget.isAvailable());
+        assertEquals(budget.getUsed(), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void exceededBySingleCharge() {
+        ByteBudget budget = new ByteBudget(10);
+        budget.charge(9);
+        assertTrue(budget.isAvailable());
+        budget.charge(5);
+        assertFalse(budget.isAvailable());
+        budget.refund(5);
+        assertTrue(budget.isAvailable());
+    }
+
+    @Test
+    public void awaitAvailable() {
+        ByteBudget budget = new ByteBudget(10);
+        AtomicInteger woken = new AtomicInteger();
+        budget.await(woken::incrementAndGet);
+        assertEquals(woken.get(), 1);
+    }
+
+    @Test
+    public void refundWakesWaitersOnce() {
+        ByteBudget budget = new ByteBudget(10);
+        AtomicInteger woken = new AtomicInteger();
+        Runnable waiter = woken::incrementAndGet;
+
+        budget.charge(15);
+        budget.await(waiter);
+        budget.await(waiter);
+        assertEquals(woken.get(), 0);
+
+        // still above the limit
+        budget.refund(3);
+        assertEquals(woken.get(), 0);
+
+        budget.refund(3);
+        assertEquals(woken.get(), 1);
+        budget.refund(3);
+        assertEquals(woken.get(), 1);
+    }
+}
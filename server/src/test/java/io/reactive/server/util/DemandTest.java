@@ -21,6 +21,8 @@ package io.reactive.server.util;
 
 import org.testng.annotations.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
@@ -32,6 +34,14 @@ public class DemandTest {
         assertEquals(demand.increase(2), 3);
     }
 
+    @Test
+    public void increaseSaturates() {
+        Demand demand = new Demand();
+        demand.increase(Long.MAX_VALUE - 1);
+        assertEquals(demand.increase(2), Long.MAX_VALUE);
+        assertEquals(demand.increase(Long.MAX_VALUE), Long.MAX_VALUE);
+    }
+
     @Test
     public void decrease() {
         Demand demand = new Demand();
@@ -43,6 +53,25 @@ public class DemandTest {
         assertEquals(demand.decrease(2), 1);
     }
 
+    @Test
+    public void replenished() {
+        AtomicInteger replenished = new AtomicInteger();
+        Demand demand = new Demand(replenished::incrementAndGet);
+
+        demand.increase(2);
+        demand.increase(1);
+        assertEquals(replenished.get(), 1);
+
+        // the publisher gives back what it has claimed, but not sent
+        demand.decrease(3);
+        demand.restore(1);
+        assertEquals(replenished.get(), 1);
+
+        demand.decrease(1);
+        demand.increase(1);
+        assertEquals(replenished.get(), 2);
+    }
+
     @Test
     public void isFulfilled() {
         Demand demand = new Demand();
@@ -0,0 +1,56 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertTrue;
+
+public class ExecutorTypeTest {
+    @DataProvider
+    public static Object[][] types() {
+        return new Object[][] {{ExecutorType.FIXED}, {ExecutorType.FORK_JOIN}, {ExecutorType.VIRTUAL}};
+    }
+
+    @Test(dataProvider = "types")
+    public void runsTasks(ExecutorType type) throws InterruptedException {
+        ExecutorService executor = type.create(2, "Test executor");
+        CountDownLatch done = new CountDownLatch(100);
+        AtomicReference<String> name = new AtomicReference<>();
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> {
+                name.set(Thread.currentThread().getName());
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(name.get().startsWith("Test executor-"), name.get());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
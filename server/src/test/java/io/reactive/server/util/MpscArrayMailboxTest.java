@@ -0,0 +1,103 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class MpscArrayMailboxTest {
+    @Test
+    public void capacityIsRoundedUp() {
+        assertEquals(new MpscArrayMailbox<Integer>(1).capacity(), 1);
+        assertEquals(new MpscArrayMailbox<Integer>(3).capacity(), 4);
+        assertEquals(new MpscArrayMailbox<Integer>(1024).capacity(), 1024);
+    }
+
+    @Test
+    public void offerAndPoll() {
+        Mailbox<Integer> mailbox = new MpscArrayMailbox<>(4);
+        assertTrue(mailbox.isEmpty());
+        assertNull(mailbox.poll());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(mailbox.offer(i));
+        }
+        assertFalse(mailbox.offer(4));
+        assertEquals(mailbox.size(), 4);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(mailbox.poll(), Integer.valueOf(i));
+        }
+        assertNull(mailbox.poll());
+        assertTrue(mailbox.isEmpty());
+        assertEquals(mailbox.size(), 0);
+
+        // wraps around
+        assertTrue(mailbox.offer(5));
+        assertEquals(mailbox.poll(), Integer.valueOf(5));
+    }
+
+    @Test
+    public void multipleProducers() throws InterruptedException {
+        int producers = 4;
+        int messages = 100_000;
+        Mailbox<Integer> mailbox = new MpscArrayMailbox<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int p = 0; p < producers; p++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                }
+                for (int i = 0; i < messages; i++) {
+                    while (!mailbox.offer(i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+
+        long sum = 0;
+        int received = 0;
+        while (received < producers * messages) {
+            Integer message = mailbox.poll();
+            if (message != null) {
+                sum += message;
+                received++;
+            }
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(sum, (long) producers * messages * (messages - 1) / 2);
+        assertTrue(mailbox.isEmpty());
+    }
+}
@@ -0,0 +1,270 @@
+package io.reactive.server.util;
+
+/*
+ * Copyright (C) 2019 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.reactive.server.domain.WebSocketMessage;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class ServerClientMessageListTest {
+    @Test
+    public void dropOldest() {
+        ServerClientMessageList messages = new ServerClientMessageList(3);
+        int evicted = 0;
+        for (int i = 0; i < 5; i++) {
+            evicted += messages.add(message(i));
+        }
+
+        assertEquals(evicted, 2);
+        assertEquals(messages.getEvicted(), 2);
+        assertEquals(messages.getSize(), 3);
+        assertEquals(messages.poll().getPayload(), "2");
+        assertEquals(messages.poll().getPayload(), "3");
+        assertEquals(messages.poll().getPayload(), "4");
+        assertNull(messages.poll());
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void dropNewest() {
+        ServerClientMessageList messages = new ServerClientMessageList(3, EvictionPolicy.DROP_NEWEST, EvictionListener.NONE);
+        for (int i = 0; i < 5; i++) {
+            messages.add(message(i));
+        }
+
+        assertEquals(messages.getEvicted(), 2);
+        assertEquals(messages.poll().getPayload(), "0");
+        assertEquals(messages.poll().getPayload(), "1");
+        assertEquals(messages.poll().getPayload(), "2");
+        assertNull(messages.poll());
+    }
+
+    @Test
+    public void conflate() {
+        ServerClientMessageList messages = new ServerClientMessageList(3);
+        messages.add(message("a", 0));
+        messages.add(message("b", 1));
+        assertEquals(messages.add(message("a", 2)), 1);
+
+        assertEquals(messages.getConflated(), 1);
+        assertEquals(messages.getEvicted(), 0);
+        assertEquals(messages.getSize(), 2);
+
+        // the latest value takes the place of the first one
+        List<WebSocketMessage> drained = new ArrayList<>();
+        assertEquals(messages.drainTo(drained::add, 10), 2);
+        assertEquals(drained.get(0).getPayload(), "2");
+        assertEquals(drained.get(1).getPayload(), "1");
+
+        // the key is free again
+        messages.add(message("a", 3));
+        assertEquals(messages.getSize(), 1);
+        assertEquals(messages.poll().getPayload(), "3");
+    }
+
+    @Test
+    public void conflateDropsOldestWhenFull() {
+        ServerClientMessageList messages = new ServerClientMessageList(2);
+        messages.add(message("a", 0));
+        messages.add(message("b", 1));
+        messages.add(message("c", 2));
+
+        assertEquals(messages.getEvicted(), 1);
+        assertEquals(messages.poll().getPayload(), "1");
+        assertEquals(messages.poll().getPayload(), "2");
+
+        // "a" was evicted, so it isn't conflated anymore
+        messages.add(message("a", 3));
+        assertEquals(messages.getConflated(), 0);
+        assertEquals(messages.poll().getPayload(), "3");
+    }
+
+    @Test
+    public void droppedKeyIsNotConflated() {
+        ServerClientMessageList messages = new ServerClientMessageList(2, EvictionPolicy.DROP_NEWEST, EvictionListener.NONE);
+        messages.add(message(0));
+        messages.add(message(1));
+        assertEquals(messages.add(message("a", 2)), 1);
+
+        messages.poll();
+        messages.add(message("a", 3));
+        assertEquals(messages.getConflated(), 0);
+        assertEquals(messages.getSize(), 2);
+    }
+
+    @Test
+    public void disconnect() {
+        List<String> events = new ArrayList<>();
+        ServerClientMessageList messages = new ServerClientMessageList(
+            2, EvictionPolicy.DISCONNECT, (policy, dropped, conflated) -> events.add(policy + ":" + dropped + ":" + conflated));
+
+        messages.add(message(0));
+        messages.add(message(1));
+        assertEquals(messages.add(message(2)), 1);
+
+        assertEquals(events, List.of("DISCONNECT:1:0"));
+        assertEquals(messages.poll().getPayload(), "0");
+    }
+
+    @Test
+    public void gap() {
+        ServerClientMessageList messages = new ServerClientMessageList(2);
+        for (int i = 0; i < 4; i++) {
+            messages.add(message(i));
+        }
+
+        assertEquals(messages.takeGap(), 2);
+        assertEquals(messages.takeGap(), 0);
+
+        messages.restoreGap(2);
+        messages.add(message(4));
+        assertEquals(messages.takeGap(), 3);
+        assertEquals(messages.getEvicted(), 3);
+    }
+
+    @Test
+    public void bytesAreAccounted() {
+        ByteBudget memory = new ByteBudget(0);
+        ServerClientMessageList messages = new ServerClientMessageList(
+            2, EvictionPolicy.DROP_OLDEST, EvictionListener.NONE, memory);
+
+        messages.add(new WebSocketMessage("12345", 0L));
+        messages.add(new WebSocketMessage("123", 0L));
+        assertEquals(messages.getBytes(), 8);
+
+        // the oldest one is evicted
+        messages.add(new WebSocketMessage("1", 0L));
+        assertEquals(messages.getBytes(), 4);
+
+        WebSocketMessage state = new WebSocketMessage("12", 0L);
+        state.setKey("a");
+        messages.poll();
+        messages.add(state);
+        assertEquals(messages.getBytes(), 3);
+
+        // the replaced one is accounted by the difference
+        WebSocketMessage newer = new WebSocketMessage("123456", 0L);
+        newer.setKey("a");
+        messages.add(newer);
+        assertEquals(messages.getBytes(), 7);
+        assertEquals(memory.getUsed(), 7);
+
+        messages.drainTo(message -> {}, 10);
+        assertEquals(messages.getBytes(), 0);
+        assertEquals(memory.getUsed(), 0);
+    }
+
+    @Test
+    public void evictOldest() {
+        List<Integer> dropped = new ArrayList<>();
+        ServerClientMessageList messages = new ServerClientMessageList(
+            10, EvictionPolicy.DISCONNECT, (policy, count, conflated) -> dropped.add(count), new ByteBudget(0));
+        for (int i = 0; i < 5; i++) {
+            messages.add(message(i));
+        }
+
+        assertEquals(messages.evictOldest(2), 2);
+        assertEquals(dropped, List.of(2));
+        assertEquals(messages.getEvicted(), 2);
+        assertEquals(messages.takeGap(), 2);
+        assertEquals(messages.poll().getPayload(), "2");
+        assertEquals(messages.evictOldest(100), 2);
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void drainTo() {
+        ServerClientMessageList messages = new ServerClientMessageList(10);
+        for (int i = 0; i < 5; i++) {
+            messages.add(message(i));
+        }
+
+        List<WebSocketMessage> drained = new ArrayList<>();
+        assertEquals(messages.drainTo(drained::add, 3), 3);
+        assertEquals(drained.size(), 3);
+        assertEquals(drained.get(0).getPayload(), "0");
+        assertEquals(messages.getSize(), 2);
+
+        assertEquals(messages.drainTo(drained::add, 10), 2);
+        assertEquals(drained.get(4).getPayload(), "4");
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void drainWithEnqueueTime() {
+        ServerClientMessageList messages = new ServerClientMessageList(10);
+        long before = System.nanoTime();
+        messages.add(message(0));
+        messages.add(message(1));
+        long after = System.nanoTime();
+
+        List<Long> enqueued = new ArrayList<>();
+        assertEquals(messages.drainWithEnqueueTime((message, time) -> enqueued.add(time), 10), 2);
+        assertTrue(enqueued.get(0) >= before && enqueued.get(0) <= enqueued.get(1) && enqueued.get(1) <= after);
+    }
+
+    @Test
+    public void concurrentProducersAreBounded() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 50_000;
+        ServerClientMessageList messages = new ServerClientMessageList(100);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    messages.add(message(i));
+                }
+                done.countDown();
+            });
+        }
+
+        int received = 0;
+        while (done.getCount() > 0) {
+            received += messages.drainTo(message -> assertNotNull(message.getPayload()), 10);
+        }
+        received += messages.drainTo(message -> assertNotNull(message.getPayload()), Integer.MAX_VALUE);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(received <= producers * perProducer);
+        assertTrue(messages.isEmpty());
+    }
+
+    private static WebSocketMessage message(int i) {
+        return new WebSocketMessage(String.valueOf(i), 0L);
+    }
+
+    private static WebSocketMessage message(String key, int i) {
+        WebSocketMessage message = message(i);
+        message.setKey(key);
+        return message;
+    }
+}